@@ -0,0 +1,83 @@
+package site.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import site.controller.model.ProjectData;
+import site.controller.model.SiteData;
+import site.entity.Project;
+import site.entity.Site;
+
+/*
+ * Measures the entity -> DTO conversion done by the SiteData and ProjectData constructors and the
+ * Jackson serialization of a list of SiteData, for wide and deep graph shapes. No database is
+ * involved.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DtoMappingBenchmark {
+
+  @Param({"WIDE", "DEEP"})
+  public SiteGraphs.Shape shape;
+
+  @Param({"10"})
+  public int sites;
+
+  private final ObjectMapper objectMapper =
+      new ObjectMapper().setFilterProvider(new SimpleFilterProvider().setFailOnUnknownId(false));
+  private List<Site> siteEntities;
+  private Project projectEntity;
+  private List<SiteData> siteDtos;
+
+  @Setup
+  public void setUp() {
+    siteEntities = new ArrayList<>(sites);
+    siteDtos = new ArrayList<>(sites);
+
+    for (long siteId = 1; siteId <= sites; siteId++) {
+      Site site = SiteGraphs.site(siteId, shape);
+      siteEntities.add(site);
+      siteDtos.add(new SiteData(site));
+    }
+    projectEntity = siteEntities.get(0).getProjects().iterator().next();
+  }
+
+  @Benchmark
+  public List<SiteData> siteEntitiesToDtos() {
+    List<SiteData> result = new ArrayList<>(siteEntities.size());
+
+    for (Site site : siteEntities) {
+      result.add(new SiteData(site));
+    }
+    return result;
+  }
+
+  @Benchmark
+  public ProjectData projectEntityToDto() {
+    return new ProjectData(projectEntity);
+  }
+
+  @Benchmark
+  public byte[] serializeSiteDtos() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(siteDtos);
+  }
+}
@@ -0,0 +1,84 @@
+package site.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import site.cache.EncodedBody;
+import site.controller.model.SiteData;
+
+/*
+ * Compares JSON with the CBOR and Smile encodings offered for the listings: encode() measures
+ * serializing a page of SiteData, encodeAndGzip() adds the gzip step done for the response cache.
+ * The payload sizes, plain and gzipped, are printed once per fork in setUp(), since JMH only
+ * reports times.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingBenchmark {
+
+  public enum Format {
+    JSON, CBOR, SMILE
+  }
+
+  @Param({"JSON", "CBOR", "SMILE"})
+  public Format format;
+
+  @Param({"WIDE", "DEEP"})
+  public SiteGraphs.Shape shape;
+
+  @Param({"10"})
+  public int sites;
+
+  private ObjectMapper objectMapper;
+  private List<SiteData> siteDtos;
+
+  @Setup
+  public void setUp() throws IOException {
+    objectMapper = switch (format) {
+      case CBOR -> new CBORMapper();
+      case SMILE -> new SmileMapper();
+      default -> new ObjectMapper();
+    };
+    objectMapper.setFilterProvider(new SimpleFilterProvider().setFailOnUnknownId(false));
+    siteDtos = new ArrayList<>(sites);
+
+    for (long siteId = 1; siteId <= sites; siteId++) {
+      siteDtos.add(new SiteData(SiteGraphs.site(siteId, shape)));
+    }
+
+    EncodedBody body = encodeAndGzip();
+    System.out.printf("%n%s %s payload: %d bytes, %d bytes gzipped%n", format, shape,
+        body.body().length, body.gzipped().length);
+  }
+
+  @Benchmark
+  public byte[] encode() throws IOException {
+    return objectMapper.writeValueAsBytes(siteDtos);
+  }
+
+  @Benchmark
+  public EncodedBody encodeAndGzip() throws IOException {
+    return EncodedBody.of(objectMapper.writeValueAsBytes(siteDtos), 0);
+  }
+}
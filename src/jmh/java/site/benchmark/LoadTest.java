@@ -0,0 +1,113 @@
+package site.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Closed-loop HTTP load test used to compare the platform thread and virtual thread modes. A fixed
+ * number of clients send GET requests to one URL back to back for a fixed time, then the
+ * throughput, latency percentiles and error count are printed, followed by the same numbers as one
+ * line of JSON.
+ * 
+ * Start the application against MySQL once without and once with the virtual-threads profile and
+ * run, for example:
+ * 
+ * mvn -Pbenchmark compile exec:exec@loadtest -Dloadtest.args="http://localhost:8080/site/1 400 30"
+ * 
+ * The arguments are the URL, the number of concurrent clients and the duration in seconds.
+ */
+
+public class LoadTest {
+
+  public static void main(String[] args) throws Exception {
+    URI uri = URI.create(args.length > 0 ? args[0] : "http://localhost:8080/site");
+    int clients = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    long seconds = args.length > 2 ? Long.parseLong(args[2]) : 30;
+    long durationNanos = Duration.ofSeconds(seconds).toNanos();
+
+    HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+    ExecutorService executor = Executors.newFixedThreadPool(clients);
+    List<Future<Client>> futures = new ArrayList<>(clients);
+    long startedAt = System.nanoTime();
+
+    for (int c = 0; c < clients; c++) {
+      futures.add(executor.submit(() -> {
+        Client client = new Client();
+
+        while (System.nanoTime() - startedAt < durationNanos) {
+          long requestStartedAt = System.nanoTime();
+
+          try {
+            HttpResponse<Void> response =
+                httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+
+            if (response.statusCode() >= 400) {
+              client.errors++;
+            }
+          } catch (Exception e) {
+            client.errors++;
+          }
+          client.record(System.nanoTime() - requestStartedAt);
+        }
+        return client;
+      }));
+    }
+
+    long[] latencies = new long[0];
+    long errors = 0;
+
+    for (Future<Client> future : futures) {
+      Client client = future.get();
+      long[] merged = Arrays.copyOf(latencies, latencies.length + client.count);
+      System.arraycopy(client.latencies, 0, merged, latencies.length, client.count);
+      latencies = merged;
+      errors += client.errors;
+    }
+    executor.shutdown();
+
+    double elapsedSeconds = (System.nanoTime() - startedAt) / 1e9;
+    Arrays.sort(latencies);
+
+    System.out.printf(Locale.ROOT,
+        "%s clients=%d requests=%d errors=%d throughput=%.1f/s p50=%.1fms p99=%.1fms max=%.1fms%n",
+        uri, clients, latencies.length, errors, latencies.length / elapsedSeconds,
+        percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+    System.out.printf(Locale.ROOT,
+        "{\"uri\":\"%s\",\"clients\":%d,\"requests\":%d,\"errors\":%d,\"throughput\":%.1f,"
+            + "\"p50Ms\":%.2f,\"p99Ms\":%.2f,\"maxMs\":%.2f}%n",
+        uri, clients, latencies.length, errors, latencies.length / elapsedSeconds,
+        percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+  }
+
+  private static double percentile(long[] sortedLatencies, double percentile) {
+    if (sortedLatencies.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+    return sortedLatencies[Math.max(index, 0)] / 1e6;
+  }
+
+  private static final class Client {
+    private long[] latencies = new long[1024];
+    private int count;
+    private long errors;
+
+    void record(long latencyNanos) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = latencyNanos;
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package site.benchmark;
+
+import site.entity.Project;
+import site.entity.Site;
+import site.entity.TeamMember;
+
+/*
+ * Builds detached Site -> Project -> TeamMember graphs of a given shape for the benchmarks. Every
+ * entity gets its own Id and name so the HashSets in the entities and DTOs keep them apart.
+ */
+
+public final class SiteGraphs {
+
+  private SiteGraphs() {}
+
+  /*
+   * The graph shapes used by the benchmarks: WIDE sites have many projects with a few team members
+   * each, DEEP sites have a few projects with many team members each.
+   */
+
+  public enum Shape {
+    WIDE(200, 5), DEEP(5, 200);
+
+    final int projectsPerSite;
+    final int teamMembersPerProject;
+
+    Shape(int projectsPerSite, int teamMembersPerProject) {
+      this.projectsPerSite = projectsPerSite;
+      this.teamMembersPerProject = teamMembersPerProject;
+    }
+  }
+
+  static Site site(long siteId, Shape shape) {
+    Site site = new Site();
+    site.setSiteId(siteId);
+    site.setSiteName("Site " + siteId);
+    site.setSiteAddress(siteId + " Main Street");
+    site.setSiteState("CA");
+    site.setSiteZip("90210");
+    site.setSitePhone("555-0100");
+
+    long projectId = siteId * shape.projectsPerSite;
+    long teamMemberId = projectId * shape.teamMembersPerProject;
+
+    for (int p = 0; p < shape.projectsPerSite; p++, projectId++) {
+      Project project = new Project();
+      project.setProjectId(projectId);
+      project.setProjectName("Project " + projectId);
+      project.setProjectLength(p % 12 + " months");
+      project.setProjectType(p % 2 == 0 ? "Construction" : "Renovation");
+      project.setSite(site);
+
+      for (int m = 0; m < shape.teamMembersPerProject; m++, teamMemberId++) {
+        TeamMember teamMember = new TeamMember();
+        teamMember.setTeamMemberId(teamMemberId);
+        teamMember.setTeamMemberName("Member " + teamMemberId);
+        teamMember.setTeamMemberRole(m % 3 == 0 ? "Engineer" : "Technician");
+        teamMember.setTeamMemberPhone("555-" + teamMemberId);
+        teamMember.getProject().add(project);
+        project.getTeamMembers().add(teamMember);
+      }
+      site.getProjects().add(project);
+    }
+    return site;
+  }
+}
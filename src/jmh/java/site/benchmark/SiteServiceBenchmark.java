@@ -0,0 +1,145 @@
+package site.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Sort;
+import site.SiteApplication;
+import site.controller.model.BatchItemResult;
+import site.controller.model.ProjectData;
+import site.controller.model.SiteData;
+import site.controller.model.TeamMemberData;
+import site.service.SiteService;
+
+/*
+ * Measures SiteService end to end against an embedded H2 database: Hibernate, the fetch plans in
+ * the DAOs and the DTO mapping. The application context is started without the web server, the
+ * datasource settings are overridden as command line arguments so they win over application.yaml,
+ * and the database is filled through the batch methods before the measurements start.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SiteServiceBenchmark {
+
+  @Param({"WIDE", "DEEP"})
+  public SiteGraphs.Shape shape;
+
+  @Param({"20"})
+  public int sites;
+
+  private static final String H2_URL =
+      "jdbc:h2:mem:benchmark;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_ON_EXIT=FALSE";
+
+  private ConfigurableApplicationContext context;
+  private SiteService siteService;
+  private Long firstSiteId;
+  private Long firstProjectId;
+
+  @Setup
+  public void setUp() {
+    context = new SpringApplicationBuilder(SiteApplication.class)
+        .web(WebApplicationType.NONE)
+        .run("--spring.datasource.url=" + H2_URL,
+            "--spring.datasource.username=sa", "--spring.datasource.password=",
+            "--spring.jpa.hibernate.ddl-auto=create-drop", "--spring.jpa.show-sql=false",
+            "--logging.level.root=WARN");
+    siteService = context.getBean(SiteService.class);
+    seed();
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public List<SiteData> retrieveSitePage() {
+    return siteService.retrieveSitePage(null, sites, SiteData.FULL_DEPTH);
+  }
+
+  @Benchmark
+  public List<ProjectData> retrieveAllProjects() {
+    return siteService.retrieveAllProjects(null, null, Sort.unsorted(), ProjectData.FULL_DEPTH);
+  }
+
+  @Benchmark
+  public List<TeamMemberData> retrieveAllTeamMembers() {
+    return siteService.retrieveAllTeamMembers(null, Sort.unsorted());
+  }
+
+  @Benchmark
+  public SiteData retrieveSiteById() {
+    return siteService.retrieveSiteById(firstSiteId, SiteData.FULL_DEPTH);
+  }
+
+  @Benchmark
+  public ProjectData retrieveProjectById() {
+    return siteService.retrieveProjectById(firstProjectId, ProjectData.FULL_DEPTH);
+  }
+
+  private void seed() {
+    List<SiteData> siteDtos = new ArrayList<>(sites);
+
+    for (long siteId = 1; siteId <= sites; siteId++) {
+      SiteData siteData = new SiteData(SiteGraphs.site(siteId, shape));
+      siteDtos.add(siteData);
+    }
+
+    List<SiteData> newSites = new ArrayList<>(siteDtos.size());
+
+    for (SiteData siteData : siteDtos) {
+      SiteData newSite = new SiteData();
+      newSite.setSiteName(siteData.getSiteName());
+      newSites.add(newSite);
+    }
+
+    List<BatchItemResult> siteResults = siteService.saveSites(newSites);
+    firstSiteId = siteResults.get(0).getId();
+
+    for (int s = 0; s < siteDtos.size(); s++) {
+      List<ProjectData> projects = new ArrayList<>(siteDtos.get(s).getProjects());
+      List<ProjectData> newProjects = new ArrayList<>(projects.size());
+
+      for (ProjectData projectData : projects) {
+        newProjects.add(new ProjectData(null, projectData.getProjectName(),
+            projectData.getProjectLength(), projectData.getProjectType(), null));
+      }
+
+      List<BatchItemResult> projectResults =
+          siteService.saveProjects(siteResults.get(s).getId(), newProjects);
+
+      if (s == 0) {
+        firstProjectId = projectResults.get(0).getId();
+      }
+
+      for (int p = 0; p < projects.size(); p++) {
+        List<TeamMemberData> teamMembers = new ArrayList<>(projects.get(p).getTeamMembers());
+
+        for (TeamMemberData teamMemberData : teamMembers) {
+          teamMemberData.setTeamMemberId(null);
+        }
+        siteService.saveTeamMembers(projectResults.get(p).getId(), teamMembers);
+      }
+    }
+  }
+}
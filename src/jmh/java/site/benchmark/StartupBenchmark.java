@@ -0,0 +1,112 @@
+package site.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Measures the time to first request of the application: a command that starts it is run a number
+ * of times, one after the other, and each time the time from starting the process until the first
+ * 200 response from a URL is recorded. The process is stopped after every run. The minimum, median
+ * and maximum are printed, followed by the same numbers as one line of JSON.
+ * 
+ * Package the jar and compare the plain start with the AOT and CDS build of the prod profile (see
+ * the aot and cds profiles in pom.xml), for example:
+ * 
+ * mvn -Pbenchmark compile exec:exec@startup -Dstartup.args="5 http://localhost:8080/site java
+ * -Dspring.profiles.active=prod -jar target/site-0.0.1-SNAPSHOT.jar"
+ * 
+ * mvn -Pbenchmark compile exec:exec@startup -Dstartup.args="5 http://localhost:8080/site java
+ * -XX:SharedArchiveFile=target/extracted/application.jsa -Dspring.aot.enabled=true
+ * -Dspring.profiles.active=prod -jar target/extracted/site-0.0.1-SNAPSHOT.jar"
+ * 
+ * The arguments are the number of runs, the URL and the command with its arguments. The output of
+ * the application is written to target/startup.log.
+ */
+
+public class StartupBenchmark {
+
+  private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      throw new IllegalArgumentException("Usage: StartupBenchmark <runs> <url> <command...>");
+    }
+
+    int runs = Integer.parseInt(args[0]);
+    URI uri = URI.create(args[1]);
+    List<String> command = Arrays.asList(args).subList(2, args.length);
+
+    HttpClient httpClient =
+        HttpClient.newBuilder().connectTimeout(Duration.ofMillis(500)).build();
+    HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(5)).GET().build();
+    File log = new File("target/startup.log");
+    long[] millis = new long[runs];
+
+    for (int run = 0; run < runs; run++) {
+      long startedAt = System.nanoTime();
+      Process process = new ProcessBuilder(command).redirectErrorStream(true)
+          .redirectOutput(ProcessBuilder.Redirect.appendTo(log)).start();
+
+      try {
+        millis[run] = timeToFirstRequest(httpClient, request, process, startedAt);
+      } finally {
+        process.destroy();
+
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+          process.destroyForcibly().waitFor();
+        }
+      }
+      System.out.printf(Locale.ROOT, "Run %d: %d ms%n", run + 1, millis[run]);
+    }
+
+    Arrays.sort(millis);
+    long min = millis[0];
+    long median = millis[runs / 2];
+    long max = millis[runs - 1];
+
+    System.out.printf(Locale.ROOT, "Time to first request over %d runs: min %d ms, median %d ms,"
+        + " max %d ms%n", runs, min, median, max);
+    System.out.printf(Locale.ROOT,
+        "{\"runs\":%d,\"minMs\":%d,\"medianMs\":%d,\"maxMs\":%d}%n", runs, min, median, max);
+  }
+
+  /*
+   * Polls the URL until it answers with 200. Connection errors and other statuses mean the
+   * application is not ready yet; a process that exits or a start that takes longer than TIMEOUT
+   * ends the benchmark.
+   */
+
+  private static long timeToFirstRequest(HttpClient httpClient, HttpRequest request,
+      Process process, long startedAt) throws InterruptedException {
+    long deadline = startedAt + TIMEOUT.toNanos();
+
+    while (System.nanoTime() < deadline) {
+      if (!process.isAlive()) {
+        throw new IllegalStateException(
+            "The application exited with " + process.exitValue() + ", see target/startup.log");
+      }
+
+      try {
+        HttpResponse<Void> response =
+            httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+
+        if (response.statusCode() == 200) {
+          return (System.nanoTime() - startedAt) / 1_000_000;
+        }
+      } catch (IOException e) {
+        // Not listening yet.
+      }
+      Thread.sleep(10);
+    }
+    throw new IllegalStateException("No response from " + request.uri() + " within " + TIMEOUT);
+  }
+}
@@ -0,0 +1,11 @@
+package site.cache;
+
+/*
+ * Snapshot of the counters of one ExpiringLruCache. Evictions include both entries dropped because
+ * the cache was full and entries dropped because they expired. Coalesced counts the misses that
+ * were given the value loaded by a concurrent miss on the same key instead of loading it again.
+ */
+
+public record CacheStats(int size, int maxSize, long hits, long misses, long evictions,
+    long coalesced) {
+}
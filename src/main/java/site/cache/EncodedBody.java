@@ -0,0 +1,30 @@
+package site.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * A response body that has already been serialized, as kept by the response cache. gzipped holds
+ * the same bytes compressed with gzip, or null when the body is shorter than the gzip threshold
+ * and compressing it would not pay off.
+ */
+
+public record EncodedBody(byte[] body, byte[] gzipped) {
+
+  public static EncodedBody of(byte[] body, int gzipMinSize) {
+    if (gzipMinSize < 0 || body.length < gzipMinSize) {
+      return new EncodedBody(body, null);
+    }
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(body);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new EncodedBody(body, compressed.toByteArray());
+  }
+}
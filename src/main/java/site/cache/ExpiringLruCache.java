@@ -0,0 +1,167 @@
+package site.cache;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/*
+ * Small in-process cache with a fixed maximum number of entries and a time-to-live. Entries are
+ * kept in access order, so when the cache is full the least recently used entry is evicted.
+ * Expired entries are dropped when they are read and when the cache is over its size limit.
+ * 
+ * All methods are synchronized. The cache only holds references, so lookups are cheap and the lock
+ * is never held while a value is being loaded. Concurrent misses on the same key share one load
+ * through a SingleFlight.
+ * 
+ * A load that races with an invalidation must not put a stale value back into the cache. Callers
+ * read generation() before they load a value and pass it to putIfFresh(), which ignores the value
+ * if anything was invalidated in the meantime.
+ */
+
+public class ExpiringLruCache<K, V> {
+
+  private final int maxEntries;
+  private final long ttlNanos;
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final SingleFlight<K, V> loads = new SingleFlight<>();
+
+  private long generation;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public ExpiringLruCache(int maxEntries, Duration ttl) {
+    this.maxEntries = maxEntries;
+    this.ttlNanos = ttl.toNanos();
+  }
+
+  /*
+   * Returns the cached value for the key, or null if there is none or it has expired.
+   */
+
+  public synchronized V get(K key) {
+    Entry<V> entry = entries.get(key);
+
+    if (Objects.isNull(entry)) {
+      misses++;
+      return null;
+    }
+
+    if (entry.isExpired(System.nanoTime())) {
+      entries.remove(key);
+      evictions++;
+      misses++;
+      return null;
+    }
+
+    hits++;
+    return entry.value();
+  }
+
+  /*
+   * Returns the cached value for the key, or loads it with the loader and caches it. The loader is
+   * called without holding the lock. Concurrent misses on the same key wait for the first one's
+   * load instead of calling the loader again.
+   */
+
+  public V getOrLoad(K key, Function<K, V> loader) {
+    V cached = get(key);
+
+    if (Objects.nonNull(cached)) {
+      return cached;
+    }
+
+    return loads.execute(key, () -> {
+      long loadedAtGeneration;
+
+      synchronized (this) {
+        // A load that finished between get() and execute() has already cached the value.
+        Entry<V> entry = entries.get(key);
+
+        if (Objects.nonNull(entry) && !entry.isExpired(System.nanoTime())) {
+          return entry.value();
+        }
+        loadedAtGeneration = generation;
+      }
+
+      V value = loader.apply(key);
+      putIfFresh(key, value, loadedAtGeneration);
+      return value;
+    });
+  }
+
+  /*
+   * Returns a token to pass to putIfFresh() once the value has been loaded.
+   */
+
+  public synchronized long generation() {
+    return generation;
+  }
+
+  /*
+   * Caches the value unless an invalidation has happened since the generation was read.
+   */
+
+  public synchronized void putIfFresh(K key, V value, long loadedAtGeneration) {
+    if (loadedAtGeneration != generation) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    entries.put(key, new Entry<>(value, now + ttlNanos));
+
+    if (entries.size() > maxEntries) {
+      evict(now);
+    }
+  }
+
+  public synchronized void invalidate(K key) {
+    generation++;
+    entries.remove(key);
+    loads.forget(key);
+  }
+
+  public synchronized void invalidateAll() {
+    generation++;
+    entries.clear();
+    loads.forgetAll();
+  }
+
+  public synchronized CacheStats stats() {
+    return new CacheStats(entries.size(), maxEntries, hits, misses, evictions,
+        loads.coalesced());
+  }
+
+  /*
+   * Drops every expired entry, then the least recently used entries until the cache is back to its
+   * maximum size.
+   */
+
+  private void evict(long now) {
+    Iterator<Entry<V>> it = entries.values().iterator();
+
+    while (it.hasNext()) {
+      if (it.next().isExpired(now)) {
+        it.remove();
+        evictions++;
+      }
+    }
+
+    Iterator<Map.Entry<K, Entry<V>>> lru = entries.entrySet().iterator();
+
+    while (entries.size() > maxEntries && lru.hasNext()) {
+      lru.next();
+      lru.remove();
+      evictions++;
+    }
+  }
+
+  private record Entry<V>(V value, long expiresAt) {
+    boolean isExpired(long now) {
+      return now - expiresAt >= 0;
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package site.cache;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Lets concurrent callers that load the same key share one load. The first caller runs the loader;
+ * callers that ask for the key while it is running wait for it and get the same value or
+ * exception. Nothing is kept once the load is done.
+ * 
+ * forget() and forgetAll() detach running loads, so callers that arrive after a change start a new
+ * load instead of joining one that may have read the data from before the change. Callers that
+ * are already waiting still get the result of the load they joined.
+ */
+
+public class SingleFlight<K, V> {
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> running = new ConcurrentHashMap<>();
+  private final LongAdder coalesced = new LongAdder();
+
+  public V execute(K key, Supplier<V> loader) {
+    CompletableFuture<V> flight = new CompletableFuture<>();
+    CompletableFuture<V> other = running.putIfAbsent(key, flight);
+
+    if (Objects.nonNull(other)) {
+      coalesced.increment();
+      return join(other);
+    }
+
+    try {
+      V value = loader.get();
+      flight.complete(value);
+      return value;
+    } catch (RuntimeException | Error e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      running.remove(key, flight);
+    }
+  }
+
+  public void forget(K key) {
+    running.remove(key);
+  }
+
+  public void forgetAll() {
+    running.clear();
+  }
+
+  /*
+   * Number of callers that were given the result of a load started by another caller.
+   */
+
+  public long coalesced() {
+    return coalesced.sum();
+  }
+
+  private static <V> V join(CompletableFuture<V> flight) {
+    try {
+      return flight.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw e;
+    }
+  }
+}
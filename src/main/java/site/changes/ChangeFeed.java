@@ -0,0 +1,291 @@
+package site.changes;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import site.controller.model.ChangeEventData;
+import site.dao.ChangeEventDao;
+import site.entity.ChangeEvent;
+
+/*
+ * Change feed of the site, project and team member tables, kept as a transactional outbox.
+ * 
+ * record() is called by SiteService for every change. The events of a transaction are collected
+ * and written to the change_event table just before the transaction commits, so they commit or roll
+ * back together with the change. Writing them last also keeps the gap between taking a change Id
+ * and committing it short.
+ * 
+ * Change Ids are assigned by the database as the events are inserted, in the order the
+ * transactions reach beforeCommit(), on every instance (see ChangeEvent). A transaction can still
+ * commit after another one that took a higher Id a moment later. A reader that had already moved
+ * past the higher Id would never see the lower one. To avoid that, an event is only handed out once it is older than
+ * site.changes.settle-window. Since the Id is taken just before the commit, every transaction that
+ * took a lower Id has committed by then, as long as no commit takes longer than the window and the
+ * clocks of the instances, which set createdAt, are in sync to well within it.
+ * 
+ * Readers can long-poll with poll() or subscribe to a Server-Sent Events stream with stream(). One
+ * scheduler thread checks for new events every site.changes.poll-interval, and only queries for a
+ * reader when the feed has moved past that reader's position. Events older than
+ * site.changes.retention are deleted once an hour.
+ */
+
+@Component
+@Slf4j
+public class ChangeFeed {
+
+  public static final int MAX_LIMIT = 1000;
+  public static final int MAX_WAIT_SECONDS = 60;
+
+  @Autowired
+  private ChangeEventDao changeEventDao;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  private final Duration settleWindow;
+  private final Duration pollInterval;
+  private final Duration retention;
+  private final Duration streamTimeout;
+
+  private final Set<Waiter> waiters = ConcurrentHashMap.newKeySet();
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  public ChangeFeed(@Value("${site.changes.settle-window:1s}") Duration settleWindow,
+      @Value("${site.changes.poll-interval:250ms}") Duration pollInterval,
+      @Value("${site.changes.retention:7d}") Duration retention,
+      @Value("${site.changes.stream-timeout:30m}") Duration streamTimeout) {
+    this.settleWindow = settleWindow;
+    this.pollInterval = pollInterval;
+    this.retention = retention;
+    this.streamTimeout = streamTimeout;
+  }
+
+  @PostConstruct
+  void start() {
+    scheduler.scheduleWithFixedDelay(this::deliver, pollInterval.toMillis(),
+        pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    scheduler.scheduleWithFixedDelay(this::prune, 1, 60, TimeUnit.MINUTES);
+  }
+
+  @PreDestroy
+  void stop() {
+    scheduler.shutdownNow();
+    subscribers.forEach(subscriber -> subscriber.emitter.complete());
+  }
+
+  /*
+   * record() method adds an event for the changed row to the current transaction. A row changed
+   * more than once in the same transaction gets a single event: CREATED stays CREATED, and
+   * otherwise the last operation wins.
+   */
+
+  public void record(String entityType, Long entityId, String operation) {
+    Map<String, ChangeEvent> events = transactionEvents();
+    String key = entityType + ":" + entityId;
+    ChangeEvent existing = events.get(key);
+
+    if (Objects.isNull(existing)) {
+      events.put(key, new ChangeEvent(entityType, entityId, operation));
+    } else if (!(ChangeEventData.CREATED.equals(existing.getOperation())
+        && ChangeEventData.UPDATED.equals(operation))) {
+      existing.setOperation(operation);
+    }
+  }
+
+  /*
+   * read() method returns up to limit settled events after the given change Id, oldest first. The
+   * limit is clamped between 1 and MAX_LIMIT.
+   */
+
+  public List<ChangeEventData> read(Long after, int limit) {
+    return changeEventDao.findChanges(Objects.isNull(after) ? 0L : after, visibleBefore(),
+        Limit.of(Math.min(Math.max(limit, 1), MAX_LIMIT)));
+  }
+
+  /*
+   * poll() method answers a long-poll request. If there are events after the given change Id they
+   * are returned straight away; otherwise the request waits up to waitSeconds (at most
+   * MAX_WAIT_SECONDS) for new events and returns an empty list if none arrive.
+   */
+
+  public DeferredResult<List<ChangeEventData>> poll(Long after, int limit, int waitSeconds) {
+    long wait = TimeUnit.SECONDS.toMillis(Math.min(Math.max(waitSeconds, 0), MAX_WAIT_SECONDS));
+    DeferredResult<List<ChangeEventData>> result = new DeferredResult<>(wait, List.of());
+    List<ChangeEventData> events = read(after, limit);
+
+    if (!events.isEmpty() || wait == 0) {
+      result.setResult(events);
+      return result;
+    }
+
+    Waiter waiter = new Waiter(Objects.isNull(after) ? 0L : after,
+        Math.min(Math.max(limit, 1), MAX_LIMIT), result);
+    result.onCompletion(() -> waiters.remove(waiter));
+    waiters.add(waiter);
+    return result;
+  }
+
+  /*
+   * stream() method opens a Server-Sent Events stream of the events after the given change Id. Each
+   * event is sent with its change Id as the SSE id, so a client that reconnects with Last-Event-ID
+   * carries on where it stopped.
+   */
+
+  public SseEmitter stream(Long after) {
+    SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+    Subscriber subscriber = new Subscriber(emitter, Objects.isNull(after) ? 0L : after);
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onTimeout(() -> subscribers.remove(subscriber));
+    emitter.onError(error -> subscribers.remove(subscriber));
+    subscribers.add(subscriber);
+    return emitter;
+  }
+
+  private Instant visibleBefore() {
+    return Instant.now().minus(settleWindow);
+  }
+
+  private Map<String, ChangeEvent> transactionEvents() {
+    @SuppressWarnings("unchecked")
+    Map<String, ChangeEvent> events =
+        (Map<String, ChangeEvent>) TransactionSynchronizationManager.getResource(this);
+
+    if (Objects.nonNull(events)) {
+      return events;
+    }
+
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      throw new IllegalStateException("Changes can only be recorded inside a transaction");
+    }
+
+    Map<String, ChangeEvent> newEvents = new LinkedHashMap<>();
+    TransactionSynchronizationManager.bindResource(this, newEvents);
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void beforeCommit(boolean readOnly) {
+        Instant createdAt = Instant.now();
+
+        for (ChangeEvent event : newEvents.values()) {
+          event.setCreatedAt(createdAt);
+          entityManager.persist(event);
+        }
+      }
+
+      @Override
+      public void afterCompletion(int status) {
+        TransactionSynchronizationManager.unbindResourceIfPossible(ChangeFeed.this);
+      }
+    });
+    return newEvents;
+  }
+
+  /*
+   * deliver() method runs on the scheduler thread. It finds the newest settled change Id with one
+   * query and then reads events only for the readers that are behind it.
+   */
+
+  private void deliver() {
+    if (waiters.isEmpty() && subscribers.isEmpty()) {
+      return;
+    }
+
+    try {
+      Instant visibleBefore = visibleBefore();
+      List<Long> latest = changeEventDao.findLatestChangeIds(visibleBefore, Limit.of(1));
+
+      if (latest.isEmpty()) {
+        return;
+      }
+
+      long latestChangeId = latest.get(0);
+
+      for (Waiter waiter : waiters) {
+        if (waiter.after < latestChangeId) {
+          waiter.result.setResult(
+              changeEventDao.findChanges(waiter.after, visibleBefore, Limit.of(waiter.limit)));
+        }
+      }
+
+      for (Subscriber subscriber : subscribers) {
+        if (subscriber.after < latestChangeId) {
+          send(subscriber, changeEventDao.findChanges(subscriber.after, visibleBefore,
+              Limit.of(MAX_LIMIT)));
+        }
+      }
+    } catch (RuntimeException e) {
+      log.warn("Delivering changes failed", e);
+    }
+  }
+
+  private void send(Subscriber subscriber, List<ChangeEventData> events) {
+    try {
+      for (ChangeEventData event : events) {
+        subscriber.emitter.send(SseEmitter.event().id(String.valueOf(event.getChangeId()))
+            .name("change").data(event));
+        subscriber.after = event.getChangeId();
+      }
+    } catch (IOException | IllegalStateException e) {
+      subscribers.remove(subscriber);
+      subscriber.emitter.completeWithError(e);
+    }
+  }
+
+  private void prune() {
+    try {
+      TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+      Integer deleted = transactionTemplate.execute(
+          status -> changeEventDao.deleteCreatedBefore(Instant.now().minus(retention)));
+      if (Objects.nonNull(deleted) && deleted > 0) {
+        log.info("Deleted {} change events older than {}", deleted, retention);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Deleting old change events failed", e);
+    }
+  }
+
+  private record Waiter(long after, int limit, DeferredResult<List<ChangeEventData>> result) {
+  }
+
+  private static final class Subscriber {
+    private final SseEmitter emitter;
+    private volatile long after;
+
+    private Subscriber(SseEmitter emitter, long after) {
+      this.emitter = emitter;
+      this.after = after;
+    }
+  }
+}
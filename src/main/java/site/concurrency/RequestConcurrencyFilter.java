@@ -0,0 +1,125 @@
+package site.concurrency;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Limits the number of "/site" requests that are handled at the same time when requests run on
+ * virtual threads. With platform threads the Tomcat thread pool caps concurrency; with virtual
+ * threads every request gets its own thread, so a burst would otherwise queue thousands of threads
+ * on the JDBC connection pool until they time out.
+ * 
+ * At most site.concurrency.max-in-flight requests are handled at once. A request waits up to
+ * site.concurrency.acquire-timeout for a permit and is then rejected with 503 Service Unavailable,
+ * counted by the site.requests.rejected meter. Actuator requests are never limited.
+ * 
+ * The streaming requests (/site/stream, /site/export) are asynchronous: the filter chain returns
+ * while the body is still being written on another thread, with a database connection open. Their
+ * permit is held until the async request completes. The change feed (/site/changes and
+ * /site/changes/stream) is not limited: a long-poll or SSE client waits for up to minutes without
+ * holding a connection, since ChangeFeed reads new events once for all of them, and holding a
+ * permit that long would let a few idle subscribers lock every other request out.
+ */
+
+@Component
+@ConditionalOnProperty(name = "spring.threads.virtual.enabled", havingValue = "true")
+@Slf4j
+public class RequestConcurrencyFilter extends OncePerRequestFilter {
+
+  private final Semaphore permits;
+  private final long acquireTimeoutNanos;
+  private final Counter rejected;
+
+  public RequestConcurrencyFilter(@Value("${site.concurrency.max-in-flight:40}") int maxInFlight,
+      @Value("${site.concurrency.acquire-timeout:2s}") Duration acquireTimeout,
+      MeterRegistry meterRegistry) {
+    this.permits = new Semaphore(maxInFlight, true);
+    this.acquireTimeoutNanos = acquireTimeout.toNanos();
+    this.rejected = Counter.builder("site.requests.rejected")
+        .description("Requests rejected because too many requests were in flight")
+        .register(meterRegistry);
+  }
+
+  @Override
+  protected boolean shouldNotFilter(HttpServletRequest request) {
+    String uri = request.getRequestURI();
+    return !uri.startsWith("/site") || uri.startsWith("/site/changes");
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+    boolean acquired;
+
+    try {
+      acquired = permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      acquired = false;
+    }
+
+    if (!acquired) {
+      rejected.increment();
+      log.warn("Rejecting {} {}: too many requests in flight", request.getMethod(),
+          request.getRequestURI());
+      response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+      response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+      response.getWriter().write("{\"message\":\"Too many requests in flight, try again later\"}");
+      return;
+    }
+
+    boolean async = false;
+
+    try {
+      filterChain.doFilter(request, response);
+
+      if (request.isAsyncStarted()) {
+        request.getAsyncContext().addListener(new ReleaseOnComplete());
+        async = true;
+      }
+    } finally {
+      if (!async) {
+        permits.release();
+      }
+    }
+  }
+
+  /*
+   * Releases the permit of an async request. onComplete() is called once for every async request,
+   * also after a timeout or an error.
+   */
+
+  private class ReleaseOnComplete implements AsyncListener {
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      permits.release();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {}
+
+    @Override
+    public void onError(AsyncEvent event) {}
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+  }
+}
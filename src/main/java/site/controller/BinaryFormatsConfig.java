@@ -0,0 +1,34 @@
+package site.controller;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/*
+ * Message converters for the CBOR (application/cbor) and Smile (application/x-jackson-smile)
+ * encodings, so a client can ask for either with the Accept header instead of JSON. Spring would
+ * register both on its own with a plain ObjectMapper; copying the application's ObjectMapper with
+ * a binary factory gives them the same settings and modules as JSON, including the filter provider
+ * from FieldsFilterConfig that the "fields" parameter relies on.
+ */
+
+@Configuration
+public class BinaryFormatsConfig {
+
+  @Bean
+  public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(
+      ObjectMapper objectMapper) {
+    return new MappingJackson2CborHttpMessageConverter(objectMapper.copyWith(new CBORFactory()));
+  }
+
+  @Bean
+  public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(
+      ObjectMapper objectMapper) {
+    return new MappingJackson2SmileHttpMessageConverter(
+        objectMapper.copyWith(new SmileFactory()));
+  }
+}
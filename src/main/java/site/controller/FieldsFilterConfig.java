@@ -0,0 +1,21 @@
+package site.controller;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * SiteData and ProjectData carry a @JsonFilter so the controller can serialize only the fields a
+ * caller asked for. This registers an empty filter provider that ignores unknown filter Ids, so
+ * everywhere else (exports, nested DTOs, requests without "fields") writes every field.
+ */
+
+@Configuration
+public class FieldsFilterConfig {
+
+  @Bean
+  public Jackson2ObjectMapperBuilderCustomizer fieldsFilterCustomizer() {
+    return builder -> builder.filters(new SimpleFilterProvider().setFailOnUnknownId(false));
+  }
+}
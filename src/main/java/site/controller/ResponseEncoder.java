@@ -0,0 +1,158 @@
+package site.controller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeTypeUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import site.cache.EncodedBody;
+
+/*
+ * Serializes the bodies kept in the response cache and writes them back out. A body is turned
+ * into JSON bytes once, with the fields selected by the caller, and gzipped as well when it is at
+ * least site.response-cache.gzip-min-size bytes (a negative size turns gzip off). respond() sends
+ * the gzipped bytes to clients that accept gzip and the plain bytes to everyone else, without
+ * touching Jackson again.
+ * 
+ * Bodies can also be encoded as CBOR or Smile, with the ObjectMappers of the converters from
+ * BinaryFormatsConfig. negotiate() picks the format from the Accept header; each format is cached
+ * under its own key, so the format has to be part of the response cache key.
+ */
+
+@Component
+public class ResponseEncoder {
+
+  /*
+   * The encodings a cached listing can be sent in, with their media types.
+   */
+
+  public enum Format {
+    JSON(MediaType.APPLICATION_JSON),
+    CBOR(MediaType.APPLICATION_CBOR),
+    SMILE(new MediaType("application", "x-jackson-smile"));
+
+    private final MediaType mediaType;
+
+    Format(MediaType mediaType) {
+      this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+      return mediaType;
+    }
+  }
+
+  private final ObjectMapper jsonMapper;
+  private final ObjectMapper cborMapper;
+  private final ObjectMapper smileMapper;
+  private final int gzipMinSize;
+
+  public ResponseEncoder(ObjectMapper objectMapper,
+      MappingJackson2CborHttpMessageConverter cborConverter,
+      MappingJackson2SmileHttpMessageConverter smileConverter,
+      @Value("${site.response-cache.gzip-min-size:1024}") int gzipMinSize) {
+    this.jsonMapper = objectMapper;
+    this.cborMapper = cborConverter.getObjectMapper();
+    this.smileMapper = smileConverter.getObjectMapper();
+    this.gzipMinSize = gzipMinSize;
+  }
+
+  /*
+   * negotiate() method returns the format the Accept header prefers, going by quality and then
+   * specificity. JSON is used for a missing or unparseable header, for wildcards, and when none of
+   * the formats is acceptable, which is what these endpoints did before CBOR and Smile were added.
+   */
+
+  public Format negotiate(String accept) {
+    if (Objects.isNull(accept) || accept.isBlank()) {
+      return Format.JSON;
+    }
+
+    List<MediaType> mediaTypes;
+
+    try {
+      mediaTypes = MediaType.parseMediaTypes(accept);
+    } catch (InvalidMimeTypeException e) {
+      return Format.JSON;
+    }
+    MimeTypeUtils.sortBySpecificity(mediaTypes);
+
+    for (MediaType mediaType : mediaTypes) {
+      if (mediaType.getQualityValue() == 0) {
+        continue;
+      }
+
+      for (Format format : Format.values()) {
+        if (mediaType.isCompatibleWith(format.mediaType)) {
+          return format;
+        }
+      }
+    }
+    return Format.JSON;
+  }
+
+  public EncodedBody encode(MappingJacksonValue value, Format format) {
+    ObjectMapper objectMapper = switch (format) {
+      case CBOR -> cborMapper;
+      case SMILE -> smileMapper;
+      default -> jsonMapper;
+    };
+    ObjectWriter writer = Objects.isNull(value.getFilters()) ? objectMapper.writer()
+        : objectMapper.writer(value.getFilters());
+
+    try {
+      return EncodedBody.of(writer.writeValueAsBytes(value.getValue()), gzipMinSize);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public ResponseEntity<byte[]> respond(EncodedBody body, Format format, String acceptEncoding) {
+    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+        .contentType(format.mediaType)
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+
+    if (Objects.nonNull(body.gzipped()) && acceptsGzip(acceptEncoding)) {
+      return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(body.gzipped());
+    }
+    return response.body(body.body());
+  }
+
+  /*
+   * True if the Accept-Encoding header lists gzip (or *) without q=0.
+   */
+
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (Objects.isNull(acceptEncoding)) {
+      return false;
+    }
+
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      String name = parts[0].trim();
+
+      if (name.equalsIgnoreCase("gzip") || name.equals("*")) {
+        for (int i = 1; i < parts.length; i++) {
+          String parameter = parts[i].trim().replace(" ", "");
+
+          if (parameter.matches("q=0(\\.0*)?")) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+}
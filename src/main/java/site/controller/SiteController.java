@@ -1,22 +1,57 @@
 package site.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
 import lombok.extern.slf4j.Slf4j;
+import site.cache.CacheStats;
+import site.cache.EncodedBody;
+import site.changes.ChangeFeed;
+import site.controller.ResponseEncoder.Format;
+import site.controller.model.BatchItemResult;
+import site.controller.model.ChangeEventData;
 import site.controller.model.ProjectData;
+import site.controller.model.SearchResults;
 import site.controller.model.SiteData;
 import site.controller.model.TeamMemberData;
+import site.idempotency.IdempotencyStore;
+import site.logging.LogSummary;
 import site.service.SiteService;
 
 
@@ -39,49 +74,323 @@ import site.service.SiteService;
 @RequestMapping("/site")
 public class SiteController {
 
+  /*
+   * Creates, updates, deletes and imports are logged to "site.audit", which logback-spring.xml
+   * never samples or drops. Request bodies are logged as a LogSummary, not in full.
+   */
+  private static final Logger audit = LoggerFactory.getLogger("site.audit");
+
   @Autowired
   private SiteService siteService;
 
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private ChangeFeed changeFeed;
+
+  @Autowired
+  private IdempotencyStore idempotencyStore;
+
+  @Autowired
+  private ResponseEncoder responseEncoder;
+
+  private static final int DEFAULT_PAGE_SIZE = 100;
+  private static final int STREAM_PAGE_SIZE = 500;
+  private static final String NDJSON_VALUE = "application/x-ndjson";
+
   // --------------------------------SITE_CRUD_OPERATIONS------------------------------------------//
 
   /*
    * Method to map HTTP POST request to "/site" with 201 Created response. This method returns a
    * Site object and logs the request. saveSite() method from service class is called that will
    * insert the site data.
+   * 
+   * A client that may retry the request sends an Idempotency-Key header. A retry with the same key
+   * gets the site created by the first request instead of creating another one (see
+   * IdempotencyStore).
    */
 
   @PostMapping
   @ResponseStatus(code = HttpStatus.CREATED)
-  public SiteData createSite(@RequestBody SiteData siteData) {
-    log.info("Creating Site {}", siteData);
-    return siteService.saveSite(siteData);
+  public SiteData createSite(@RequestBody SiteData siteData,
+      @RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+    audit.info("Creating site {}", LogSummary.of(siteData));
+    return idempotencyStore.execute(idempotencyKey, "createSite", siteData,
+        () -> siteService.saveSite(siteData));
+  }
+
+  /*
+   * Method to create or update many sites in one HTTP POST request to "/site/batch". Sites without
+   * a site Id are created and sites with a site Id are updated. This method returns one
+   * BatchItemResult per site, in request order, and logs the request. saveSites() method from
+   * service class is called that will validate the batch and write it in chunks.
+   */
+
+  @PostMapping("/batch")
+  public List<BatchItemResult> createSites(@RequestBody List<SiteData> sites) {
+    audit.info("Saving batch of {} sites", sites.size());
+    return siteService.saveSites(sites);
+  }
+
+  /*
+   * Method to delete many sites, together with their projects, in one HTTP POST request to
+   * "/site/batch/delete". The request body is a JSON array of site Ids. This method returns one
+   * BatchItemResult per Id, in request order. deleteSites() method from service class is called
+   * that will delete the sites in chunks.
+   */
+
+  @PostMapping("/batch/delete")
+  public List<BatchItemResult> deleteSites(@RequestBody List<Long> siteIds) {
+    audit.info("Deleting batch of {} sites", siteIds.size());
+    return siteService.deleteSites(siteIds);
   }
 
   /*
    * Method to update the existing site data using the site Id. This method returns SiteData object
    * and logs the request. saveSite() method from service class is called that will modify the site
    * data to with new values.
+   * 
+   * Send the ETag from GET in an If-Match header to update only if nobody changed the site since;
+   * otherwise 412 Precondition Failed is returned. The response carries the new ETag.
    */
 
   @PutMapping("/{siteId}")
-  public SiteData updateSite(@PathVariable Long siteId, @RequestBody SiteData siteData) {
+  public ResponseEntity<SiteData> updateSite(@PathVariable Long siteId,
+      @RequestBody SiteData siteData,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
     siteData.setSiteId(siteId);
-    log.info("Updating Site {}", siteData);
-    return siteService.saveSite(siteData);
+    audit.info("Updating site {}", LogSummary.of(siteData));
+    SiteData saved = siteService.saveSite(siteData, ifMatchVersions(ifMatch));
+    return ResponseEntity.ok().eTag(eTag(saved.getVersion())).body(saved);
   }
 
   /*
-   * Method to list all sites. This methods returns a list of sites.
+   * Method to list sites one page at a time. This method returns a list of sites ordered by site
+   * Id.
+   * 
+   * @GetMapping annotation is added, this annotation does not take a value. The optional "after"
+   * parameter is the site Id of the last site from the previous page, and "limit" is the page size.
+   * To read the next page, pass the site Id of the last site returned as "after". An empty list
+   * means there are no more sites. "depth" and "fields" work as for retrieveSiteBySiteId(). Calls
+   * retrieveSitePage() method in the service class.
    * 
-   * @GetMapping annotation is added, this annotation does not take a value. Calls retrieveAllSite()
-   * method is the service class.
+   * The serialized page is kept in the response cache until the next change, so repeated requests
+   * skip both the database and Jackson.
+   * 
+   * The page is sent as JSON unless the Accept header asks for application/cbor or
+   * application/x-jackson-smile, the compact binary encodings of the same fields.
    * 
    */
 
   @GetMapping
-  public List<SiteData> retrieveAllSite() {
-    log.info("Retrieve all sites");
-    return siteService.retrieveAllSite();
+  public ResponseEntity<byte[]> retrieveAllSite(@RequestParam(required = false) Long after,
+      @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+      @RequestParam(defaultValue = "" + SiteData.FULL_DEPTH) int depth,
+      @RequestParam(required = false) Set<String> fields,
+      @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    log.info("Retrieve sites after ID={} limit={} depth={} fields={}", after, limit, depth, fields);
+    Format format = responseEncoder.negotiate(accept);
+    EncodedBody body = siteService.retrieveEncodedResponse(
+        Arrays.asList("sites", format, after, limit, depth, fields),
+        () -> responseEncoder.encode(selectFields(
+            siteService.retrieveSitePage(after, limit, depthFor(fields, "projects", depth)),
+            SiteData.FIELDS_FILTER, fields), format));
+    return responseEncoder.respond(body, format, acceptEncoding);
+  }
+
+  /*
+   * Method to stream every site as a single JSON array. The array is written to the response while
+   * the sites are still being read, one page at a time, so memory stays flat no matter how many
+   * sites are in the database.
+   * 
+   * @GetMapping annotation takes in "/stream". Each page is read in its own read-only transaction
+   * by calling retrieveSitePage() in the service class.
+   * 
+   */
+
+  @GetMapping("/stream")
+  public ResponseEntity<StreamingResponseBody> streamAllSite() {
+    log.info("Streaming all sites");
+
+    StreamingResponseBody body = outputStream -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        generator.writeStartArray();
+        Long after = null;
+        List<SiteData> page;
+
+        do {
+          page = siteService.retrieveSitePage(after, STREAM_PAGE_SIZE, SiteData.FULL_DEPTH);
+
+          for (SiteData siteData : page) {
+            generator.writeObject(siteData);
+            after = siteData.getSiteId();
+          }
+          generator.flush();
+        } while (page.size() == STREAM_PAGE_SIZE);
+
+        generator.writeEndArray();
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+
+  /*
+   * Method to export every site as newline-delimited JSON (NDJSON): one site per line, with its
+   * projects and their team members nested inside it. The sites are read one page at a time and
+   * each page is written before the next one is read, so the export never has to fit in memory.
+   */
+
+  @GetMapping(value = "/export", produces = NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> exportSites() {
+    log.info("Exporting all sites");
+
+    StreamingResponseBody body = outputStream -> {
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+        // Each line is terminated by a newline, so no separator is needed between root values.
+        generator.setRootValueSeparator(null);
+        Long after = null;
+        List<SiteData> page;
+
+        do {
+          page = siteService.retrieveSitePage(after, STREAM_PAGE_SIZE, SiteData.FULL_DEPTH);
+
+          for (SiteData siteData : page) {
+            generator.writeObject(siteData);
+            generator.writeRaw('\n');
+            after = siteData.getSiteId();
+          }
+          generator.flush();
+        } while (page.size() == STREAM_PAGE_SIZE);
+      }
+    };
+    // Set explicitly: a bare StreamingResponseBody goes out without a Content-Type, which also
+    // keeps server.compression from gzipping it.
+    return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON_VALUE)).body(body);
+  }
+
+  /*
+   * Method to import sites from newline-delimited JSON in the format written by "/site/export".
+   * The request body is parsed one site at a time while importSites() method in the service class
+   * commits the sites in bounded chunks. This method returns the number of sites, projects and team
+   * members created.
+   */
+
+  @PostMapping(value = "/import", consumes = NDJSON_VALUE)
+  @ResponseStatus(code = HttpStatus.CREATED)
+  public Map<String, Long> importSites(InputStream body) throws IOException {
+    audit.info("Importing sites");
+
+    try (MappingIterator<SiteData> sites =
+        objectMapper.readerFor(SiteData.class).readValues(body)) {
+      return siteService.importSites(sites);
+    }
+  }
+
+  /*
+   * Method to read the change feed. This method returns the changes to sites, projects and team
+   * members after a given change Id, oldest first.
+   * 
+   * @GetMapping annotation is added with the value "/changes". "after" is the changeId of the last
+   * change already seen (0 to start at the beginning) and "limit" caps the number of changes
+   * returned. With "wait" greater than 0 the request is a long poll: if there are no changes yet,
+   * it waits up to that many seconds for one and returns an empty list if none arrive.
+   * 
+   */
+
+  @GetMapping("/changes")
+  public DeferredResult<List<ChangeEventData>> retrieveChanges(
+      @RequestParam(defaultValue = "0") Long after,
+      @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+      @RequestParam(defaultValue = "0") int wait) {
+    log.debug("Retrieve changes after ID={} limit={} wait={}s", after, limit, wait);
+    return changeFeed.poll(after, limit, wait);
+  }
+
+  /*
+   * Method to follow the change feed as a Server-Sent Events stream. Each change is sent as a
+   * "change" event with its changeId as the event id. The stream starts after the "after" parameter
+   * or, when a client reconnects, after its Last-Event-ID header.
+   * 
+   */
+
+  @GetMapping(value = "/changes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter streamChanges(@RequestParam(defaultValue = "0") Long after,
+      @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+    Long from = Objects.nonNull(lastEventId) ? lastEventId : after;
+    log.info("Streaming changes after ID={}", from);
+    return changeFeed.stream(from);
+  }
+
+  /*
+   * Method to search sites, projects and team members by name. This method returns one page of
+   * hits, best match first.
+   * 
+   * @GetMapping annotation is added with the value "/search". "q" holds the words to search for;
+   * site names and addresses, project names and team member names are searched, and a word also
+   * matches longer words starting with it. The optional "type" (site, project or teamMember)
+   * limits the kind of hits, and "offset" and "limit" page through them. Calls searchAll() method
+   * in the service class.
+   * 
+   */
+
+  @GetMapping("/search")
+  public SearchResults search(@RequestParam String q,
+      @RequestParam(required = false) String type, @RequestParam(defaultValue = "0") int offset,
+      @RequestParam(defaultValue = "20") int limit) {
+    log.info("Searching for \"{}\" type={} offset={} limit={}", q, type, offset, limit);
+    return siteService.searchAll(q, type, offset, limit);
+  }
+
+  /*
+   * Method to report totals and the number of projects by type and team members by role. The
+   * counts are computed by grouped queries in the database and the encoded result is kept in the
+   * response cache until the next change, so refreshing a dashboard costs nothing while the data
+   * stays the same. The response can be JSON, CBOR or Smile as for retrieveAllSite().
+   */
+
+  @GetMapping("/stats")
+  public ResponseEntity<byte[]> retrieveStats(
+      @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    log.info("Retrieving statistics");
+    return respondWithStats("stats", siteService::retrieveStats, accept,
+        acceptEncoding);
+  }
+
+  /*
+   * Method to report the number of projects of every site. Cached as for retrieveStats().
+   */
+
+  @GetMapping("/stats/projectsPerSite")
+  public ResponseEntity<byte[]> retrieveProjectsPerSite(
+      @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    log.info("Retrieving projects per site");
+    return respondWithStats("projectsPerSite", siteService::retrieveProjectsPerSite,
+        accept, acceptEncoding);
+  }
+
+  /*
+   * Method to report the number of team members of every project. Cached as for retrieveStats().
+   */
+
+  @GetMapping("/stats/teamMembersPerProject")
+  public ResponseEntity<byte[]> retrieveTeamMembersPerProject(
+      @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    log.info("Retrieving team members per project");
+    return respondWithStats("teamMembersPerProject",
+        siteService::retrieveTeamMembersPerProject, accept, acceptEncoding);
+  }
+
+  private ResponseEntity<byte[]> respondWithStats(String name, Supplier<Object> stats,
+      String accept, String acceptEncoding) {
+    Format format = responseEncoder.negotiate(accept);
+    EncodedBody body = siteService.retrieveEncodedResponse(Arrays.asList(name, format),
+        () -> responseEncoder.encode(new MappingJacksonValue(stats.get()), format));
+    return responseEncoder.respond(body, format, acceptEncoding);
   }
 
   /*
@@ -91,12 +400,31 @@ public class SiteController {
    * @GetMapping annotation is added, this annotation takes in the site Id that is passed in to the
    * method as a parameter. Calls the retrieveSiteById() method in the service class.
    * 
+   * The response carries the version of the site as its ETag. If the request has an If-None-Match
+   * header with the current ETag, 304 Not Modified is returned after reading only the version of
+   * the site, without loading or serializing the site.
+   * 
+   * "depth" picks how much of the site is loaded and returned: 0 for the site alone, 1 with its
+   * projects and 2 (the default) with their team members as well. "fields" is a comma-separated
+   * list of the site fields to return, for example fields=siteId,siteName. If "projects" is not
+   * one of the fields, the projects are not loaded.
+   * 
    */
 
   @GetMapping("/{siteId}")
-  public SiteData retrieveSiteBySiteId(@PathVariable Long siteId) {
-    log.info("Retriving site with ID={}", siteId);
-    return siteService.retrieveSiteById(siteId);
+  public ResponseEntity<MappingJacksonValue> retrieveSiteBySiteId(@PathVariable Long siteId,
+      @RequestParam(defaultValue = "" + SiteData.FULL_DEPTH) int depth,
+      @RequestParam(required = false) Set<String> fields, WebRequest webRequest) {
+    log.info("Retriving site with ID={} depth={} fields={}", siteId, depth, fields);
+
+    if (webRequest.checkNotModified(eTag(siteService.retrieveSiteVersion(siteId)))) {
+      return null;
+    }
+
+    SiteData siteData =
+        siteService.retrieveSiteById(siteId, depthFor(fields, "projects", depth));
+    return ResponseEntity.ok().eTag(eTag(siteData.getVersion()))
+        .body(selectFields(siteData, SiteData.FIELDS_FILTER, fields));
   }
 
   /*
@@ -111,52 +439,111 @@ public class SiteController {
 
   @DeleteMapping("/{siteId}")
   public Map<String, String> deleteSiteById(@PathVariable Long siteId) {
-    log.info("Deleting Site with ID={}", siteId);
+    audit.info("Deleting site with ID={}", siteId);
     siteService.deleteSiteById(siteId);
     return Map.of("message", "Deletion of Site with ID=" + siteId + " was successful.");
   }
 
+  /*
+   * Method to report the size and the hit, miss and eviction counters of the site, project and
+   * team member caches used by the retrieve-by-Id endpoints.
+   */
+
+  @GetMapping("/cache/stats")
+  public Map<String, CacheStats> retrieveCacheStats() {
+    Map<String, CacheStats> stats = new LinkedHashMap<>(siteService.retrieveCacheStats());
+    stats.put("idempotency", idempotencyStore.stats());
+    return stats;
+  }
+
   // -------------------------------------------PROJECT CRUD OPERATIONS---------------------------//
 
   /*
    * Method to add projects to site. This method allows a project to be added to a site using HTTP
    * POST request to "/site/{siteId}/project" with 201 created response. This methods calls the
-   * saveProject() method in the service class and returns the result of that method call.
+   * saveProject() method in the service class and returns the result of that method call. An
+   * Idempotency-Key header works as for createSite().
    */
 
   @PostMapping("/{siteId}/project")
   @ResponseStatus(code = HttpStatus.CREATED)
-  public ProjectData addProject(@PathVariable Long siteId, @RequestBody ProjectData projectData) {
-    log.info("Adding project for site ID:{}", projectData, siteId);
-    return siteService.saveProject(siteId, projectData);
+  public ProjectData addProject(@PathVariable Long siteId, @RequestBody ProjectData projectData,
+      @RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+    audit.info("Adding project {} to site ID={}", LogSummary.of(projectData), siteId);
+    return idempotencyStore.execute(idempotencyKey, "addProject site=" + siteId, projectData,
+        () -> siteService.saveProject(siteId, projectData));
+  }
+
+  /*
+   * Method to create or update many projects of a site in one HTTP POST request to
+   * "/site/{siteId}/project/batch". This method returns one BatchItemResult per project, in request
+   * order. saveProjects() method from service class is called.
+   */
+
+  @PostMapping("/{siteId}/project/batch")
+  public List<BatchItemResult> addProjects(@PathVariable Long siteId,
+      @RequestBody List<ProjectData> projects) {
+    audit.info("Saving batch of {} projects for site ID={}", projects.size(), siteId);
+    return siteService.saveProjects(siteId, projects);
+  }
+
+  /*
+   * Method to delete many projects, of any site, in one HTTP POST request to
+   * "/site/project/batch/delete". The request body is a JSON array of project Ids. This method
+   * returns one BatchItemResult per Id, in request order. deleteProjects() method from service
+   * class is called.
+   */
+
+  @PostMapping("/project/batch/delete")
+  public List<BatchItemResult> deleteProjects(@RequestBody List<Long> projectIds) {
+    audit.info("Deleting batch of {} projects", projectIds.size());
+    return siteService.deleteProjects(projectIds);
   }
 
   /*
    * Method to update the existing project data using the project Id. This method returns
    * ProjectData object and logs the request. saveProject() method from service class is called that
-   * will modify the Project data to with new values.
+   * will modify the Project data to with new values. If-Match works as for updateSite().
    */
 
   @PutMapping("/{siteId}/project/{projectId}")
-  public ProjectData updateProject(@PathVariable Long siteId, @PathVariable Long projectId,
-      @RequestBody ProjectData projectData) {
+  public ResponseEntity<ProjectData> updateProject(@PathVariable Long siteId,
+      @PathVariable Long projectId, @RequestBody ProjectData projectData,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
     projectData.setProjectId(projectId);
-    log.info("Updating Project {}", projectData);
-    return siteService.saveProject(siteId, projectData);
+    audit.info("Updating project {} of site ID={}", LogSummary.of(projectData), siteId);
+    ProjectData saved = siteService.saveProject(siteId, projectData, ifMatchVersions(ifMatch));
+    return ResponseEntity.ok().eTag(eTag(saved.getVersion())).body(saved);
   }
 
   /*
-   * Method to list all projects. This methods returns a list of projects.
+   * Method to list projects. This methods returns a list of projects.
    * 
-   * @GetMapping annotation is added, this annotation does not take a value. Calls
-   * retrieveAllProjects() method is the service class.
+   * @GetMapping annotation is added, this annotation does not take a value. The optional
+   * "projectType" and "siteState" parameters filter the projects, and "sort" orders them, for
+   * example sort=projectName,desc. "depth" and "fields" work as for retrieveProjectById(). Calls
+   * retrieveAllProjects() method is the service class. The serialized list is cached, and can be
+   * sent as CBOR or Smile, as for retrieveAllSite().
    * 
    */
 
   @GetMapping("/project")
-  public List<ProjectData> retrieveAllProjects() {
-    log.info("Retriving all projects");
-    return siteService.retrieveAllProjects();
+  public ResponseEntity<byte[]> retrieveAllProjects(
+      @RequestParam(required = false) String projectType,
+      @RequestParam(required = false) String siteState, Sort sort,
+      @RequestParam(defaultValue = "" + ProjectData.FULL_DEPTH) int depth,
+      @RequestParam(required = false) Set<String> fields,
+      @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    log.info("Retriving projects with type={} siteState={} sort={}", projectType, siteState, sort);
+    Format format = responseEncoder.negotiate(accept);
+    EncodedBody body = siteService.retrieveEncodedResponse(
+        Arrays.asList("projects", format, projectType, siteState, sort, depth, fields),
+        () -> responseEncoder.encode(selectFields(
+            siteService.retrieveAllProjects(projectType, siteState, sort,
+                depthFor(fields, "teamMembers", depth)),
+            ProjectData.FIELDS_FILTER, fields), format));
+    return responseEncoder.respond(body, format, acceptEncoding);
   }
 
   /*
@@ -164,14 +551,29 @@ public class SiteController {
    * given project Id.
    * 
    * @GetMapping annotation is added, this annotation takes in the project Id that is passed in to
-   * the method as a parameter. Calls the retrieveProjectById() method in the service class.
+   * the method as a parameter. Calls the retrieveProjectById() method in the service class. The
+   * version of the project is used as the ETag, as for sites.
+   * 
+   * "depth=0" returns the project without its team members, and "fields" is a comma-separated list
+   * of the project fields to return. If "teamMembers" is not one of the fields, the team members
+   * are not loaded.
    * 
    */
 
   @GetMapping("/project/{projectId}")
-  public ProjectData retrieveProjectById(@PathVariable Long projectId) {
-    log.info("Retrieving project with ID={}", projectId);
-    return siteService.retrieveProjectById(projectId);
+  public ResponseEntity<MappingJacksonValue> retrieveProjectById(@PathVariable Long projectId,
+      @RequestParam(defaultValue = "" + ProjectData.FULL_DEPTH) int depth,
+      @RequestParam(required = false) Set<String> fields, WebRequest webRequest) {
+    log.info("Retrieving project with ID={} depth={} fields={}", projectId, depth, fields);
+
+    if (webRequest.checkNotModified(eTag(siteService.retrieveProjectVersion(projectId)))) {
+      return null;
+    }
+
+    ProjectData projectData =
+        siteService.retrieveProjectById(projectId, depthFor(fields, "teamMembers", depth));
+    return ResponseEntity.ok().eTag(eTag(projectData.getVersion()))
+        .body(selectFields(projectData, ProjectData.FIELDS_FILTER, fields));
   }
 
   /*
@@ -186,7 +588,7 @@ public class SiteController {
 
   @DeleteMapping("/{siteId}/project/{projectId}")
   public Map<String, String> deleteProjectById(@PathVariable Long projectId) {
-    log.info("Deleting project with ID={}", projectId);
+    audit.info("Deleting project with ID={}", projectId);
     siteService.deleteProjectById(projectId);
     return Map.of("message", "Deletion of Project with ID=" + projectId + " was successful.");
   }
@@ -197,46 +599,130 @@ public class SiteController {
    * Method to add team member to project. This method allows a team member to be added to a project
    * using HTTP POST request to "/site/project/{projectId}/teamMember" with 201 created response.
    * This methods calls the saveTeamMember() method in the service class and returns the result of
-   * that method call.
+   * that method call. An Idempotency-Key header works as for createSite().
    */
 
   @PostMapping("/project/{projectId}/teamMember")
   @ResponseStatus(code = HttpStatus.CREATED)
   public TeamMemberData addTeamMember(@PathVariable Long projectId,
-      @RequestBody TeamMemberData teamMemberData) {
-    log.info("Adding team member to a project with project ID:{}", teamMemberData, projectId);
-    return siteService.saveTeamMember(projectId, teamMemberData);
+      @RequestBody TeamMemberData teamMemberData,
+      @RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+    audit.info("Adding team member {} to project ID={}", LogSummary.of(teamMemberData),
+        projectId);
+    return idempotencyStore.execute(idempotencyKey, "addTeamMember project=" + projectId,
+        teamMemberData, () -> siteService.saveTeamMember(projectId, teamMemberData));
+  }
+
+  /*
+   * Method to create or update many team members of a project in one HTTP POST request to
+   * "/site/project/{projectId}/teamMember/batch". This method returns one BatchItemResult per team
+   * member, in request order. saveTeamMembers() method from service class is called.
+   */
+
+  @PostMapping("/project/{projectId}/teamMember/batch")
+  public List<BatchItemResult> addTeamMembers(@PathVariable Long projectId,
+      @RequestBody List<TeamMemberData> teamMembers) {
+    audit.info("Saving batch of {} team members for project ID={}", teamMembers.size(),
+        projectId);
+    return siteService.saveTeamMembers(projectId, teamMembers);
   }
 
   /*
    * Method to update the existing team member data using the team member Id. This method returns
    * TeamMemberData object and logs the request. saveTeamMember() method from service class is
-   * called that will modify the teamMember data to with new values.
+   * called that will modify the teamMember data to with new values. If-Match works as for
+   * updateSite().
    */
 
   @PutMapping("/project/{projectId}/teamMember/{teamMemberId}")
-  public TeamMemberData updateTeamMember(@PathVariable Long projectId,
-      @PathVariable Long teamMemberId, @RequestBody TeamMemberData teamMemberData) {
+  public ResponseEntity<TeamMemberData> updateTeamMember(@PathVariable Long projectId,
+      @PathVariable Long teamMemberId, @RequestBody TeamMemberData teamMemberData,
+      @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
 
     teamMemberData.setTeamMemberId(teamMemberId);
-    log.info("Updating teamMember {}", teamMemberData);
+    audit.info("Updating team member {} of project ID={}", LogSummary.of(teamMemberData),
+        projectId);
 
-    return siteService.saveTeamMember(projectId, teamMemberData);
+    TeamMemberData saved =
+        siteService.saveTeamMember(projectId, teamMemberData, ifMatchVersions(ifMatch));
+    return ResponseEntity.ok().eTag(eTag(saved.getVersion())).body(saved);
   }
 
   /*
-   * Method to list all team members. This methods returns a list of team members.
+   * Methods to add an existing team member to a project with HTTP PUT request to
+   * "/site/project/{projectId}/member/{teamMemberId}" and to remove it from the project, without
+   * deleting the team member, with HTTP DELETE request to the same URI. Both are idempotent and
+   * return a message saying whether the membership changed. attachTeamMember() and
+   * detachTeamMember() methods from service class are called, which write the project_team_member
+   * row directly, so the cost does not grow with the number of members of the project.
+   */
+
+  @PutMapping("/project/{projectId}/member/{teamMemberId}")
+  public Map<String, String> attachTeamMember(@PathVariable Long projectId,
+      @PathVariable Long teamMemberId) {
+    audit.info("Attaching team member ID={} to project ID={}", teamMemberId, projectId);
+    boolean attached = siteService.attachTeamMember(projectId, teamMemberId);
+    return Map.of("message", "Team member with ID=" + teamMemberId
+        + (attached ? " was added to" : " already is a member of") + " project with ID="
+        + projectId + ".");
+  }
+
+  @DeleteMapping("/project/{projectId}/member/{teamMemberId}")
+  public Map<String, String> detachTeamMember(@PathVariable Long projectId,
+      @PathVariable Long teamMemberId) {
+    audit.info("Detaching team member ID={} from project ID={}", teamMemberId, projectId);
+    boolean detached = siteService.detachTeamMember(projectId, teamMemberId);
+    return Map.of("message", "Team member with ID=" + teamMemberId
+        + (detached ? " was removed from" : " is not a member of") + " project with ID="
+        + projectId + ".");
+  }
+
+  /*
+   * Methods to add many existing team members to a project in one HTTP POST request to
+   * "/site/project/{projectId}/member/batch" and to remove them with one to
+   * "/site/project/{projectId}/member/batch/delete". The request body is a JSON array of team
+   * member Ids. These methods return one BatchItemResult per Id, in request order.
+   */
+
+  @PostMapping("/project/{projectId}/member/batch")
+  public List<BatchItemResult> attachTeamMembers(@PathVariable Long projectId,
+      @RequestBody List<Long> teamMemberIds) {
+    audit.info("Attaching batch of {} team members to project ID={}", teamMemberIds.size(),
+        projectId);
+    return siteService.attachTeamMembers(projectId, teamMemberIds);
+  }
+
+  @PostMapping("/project/{projectId}/member/batch/delete")
+  public List<BatchItemResult> detachTeamMembers(@PathVariable Long projectId,
+      @RequestBody List<Long> teamMemberIds) {
+    audit.info("Detaching batch of {} team members from project ID={}", teamMemberIds.size(),
+        projectId);
+    return siteService.detachTeamMembers(projectId, teamMemberIds);
+  }
+
+  /*
+   * Method to list team members. This methods returns a list of team members.
    * 
-   * @GetMapping annotation is added, this annotation does not take a value. Calls
-   * retrieveAllTeamMembers() method is the service class.
+   * @GetMapping annotation is added, this annotation does not take a value. The optional
+   * "teamMemberRole" parameter filters the team members, and "sort" orders them, for example
+   * sort=teamMemberName. Calls retrieveAllTeamMembers() method is the service class. The
+   * serialized list is cached, and can be sent as CBOR or Smile, as for retrieveAllSite().
    * 
    */
 
   @GetMapping("/teamMember")
-  public List<TeamMemberData> retrieveAllTeamMembers() {
-    log.info("Retriving all team members");
-
-    return siteService.retrieveAllTeamMembers();
+  public ResponseEntity<byte[]> retrieveAllTeamMembers(
+      @RequestParam(required = false) String teamMemberRole, Sort sort,
+      @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    log.info("Retriving team members with role={} sort={}", teamMemberRole, sort);
+    Format format = responseEncoder.negotiate(accept);
+    EncodedBody body = siteService.retrieveEncodedResponse(
+        Arrays.asList("teamMembers", format, teamMemberRole, sort),
+        () -> responseEncoder.encode(
+            new MappingJacksonValue(siteService.retrieveAllTeamMembers(teamMemberRole, sort)),
+            format));
+    return responseEncoder.respond(body, format, acceptEncoding);
   }
 
   /*
@@ -245,13 +731,81 @@ public class SiteController {
    * 
    * @GetMapping annotation is added, this annotation takes in the team member Id that is passed in
    * to the method as a parameter. Calls the retrieveTeamMemberById() method in the service class.
+   * The version of the team member is used as the ETag, as for sites.
    * 
    */
 
   @GetMapping("/teamMember/{teamMemberId}")
-  public TeamMemberData retrieveTeamMemberById(@PathVariable Long teamMemberId) {
+  public ResponseEntity<TeamMemberData> retrieveTeamMemberById(@PathVariable Long teamMemberId,
+      WebRequest webRequest) {
     log.info("Retriving team member with ID={}", teamMemberId);
-    return siteService.retrieveTeamMemberById(teamMemberId);
+
+    if (webRequest.checkNotModified(eTag(siteService.retrieveTeamMemberVersion(teamMemberId)))) {
+      return null;
+    }
+
+    TeamMemberData teamMemberData = siteService.retrieveTeamMemberById(teamMemberId);
+    return ResponseEntity.ok().eTag(eTag(teamMemberData.getVersion())).body(teamMemberData);
+  }
+
+  /*
+   * Strong ETag for a version: the version number in double quotes.
+   */
+
+  private static String eTag(Long version) {
+    return "\"" + version + "\"";
+  }
+
+  /*
+   * Versions named by an If-Match header, or null when there is no header or it is "*", which
+   * every existing row matches. If-Match compares ETags strongly, so weak ETags (W/"3") and values
+   * that are not one of our ETags match no version.
+   */
+
+  private static Set<Long> ifMatchVersions(String ifMatch) {
+    if (Objects.isNull(ifMatch) || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+      return null;
+    }
+
+    Set<Long> versions = new HashSet<>();
+
+    for (String tag : ifMatch.split(",")) {
+      String value = tag.trim();
+
+      if (value.length() > 2 && value.startsWith("\"") && value.endsWith("\"")) {
+        try {
+          versions.add(Long.valueOf(value.substring(1, value.length() - 1)));
+        } catch (NumberFormatException e) {
+          // Not one of our ETags, so it cannot match.
+        }
+      }
+    }
+    return versions;
+  }
+
+  /*
+   * A caller that leaves an association out of "fields" will not see it, so there is no point
+   * loading it: the depth drops to 0.
+   */
+
+  private static int depthFor(Set<String> fields, String association, int depth) {
+    return Objects.nonNull(fields) && !fields.contains(association) ? 0 : depth;
+  }
+
+  /*
+   * Wraps a response body so only the requested fields of the top-level DTOs are written. Without
+   * "fields" every field is written.
+   */
+
+  private static MappingJacksonValue selectFields(Object body, String filterId,
+      Set<String> fields) {
+    MappingJacksonValue value = new MappingJacksonValue(body);
+
+    if (Objects.nonNull(fields)) {
+      value.setFilters(new SimpleFilterProvider().setFailOnUnknownId(false)
+          .addFilter(filterId, SimpleBeanPropertyFilter.filterOutAllExcept(fields)));
+    }
+    return value;
   }
 
   /*
@@ -266,7 +820,7 @@ public class SiteController {
 
   @DeleteMapping("/project/{projectId}/teamMember/{teamMemberId}")
   public Map<String, String> deleteTeamMemberById(@PathVariable Long teamMemberId) {
-    log.info("Deleting team member with ID={}", teamMemberId);
+    audit.info("Deleting team member with ID={}", teamMemberId);
     siteService.deleteTeamMemberById(teamMemberId);
     return Map.of("message",
         "Deletion of team member with ID=" + teamMemberId + " was successful.");
@@ -2,11 +2,15 @@ package site.controller.error;
 
 import java.util.Map;
 import java.util.NoSuchElementException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import lombok.extern.slf4j.Slf4j;
+import site.idempotency.IdempotencyKeyReusedException;
+import site.logging.LogSummary;
+import site.service.VersionMismatchException;
 
 /*
  * Global error handler class is created to handle and log exceptions in a organized way rather than
@@ -26,19 +30,57 @@ public class GlobalErrorHandler {
    * as a parameter and returns Map with Key "message" and the result of the exception parameter ex
    * by calling toString().
    * 
+   * These are caller errors, so they are logged as warnings without a stack trace. The exception
+   * text can echo request input, so the log gets it as a LogSummary, cut to LogSummary.MAX_LENGTH.
+   * 
    */
 
   @ExceptionHandler(NoSuchElementException.class)
   @ResponseStatus(code = HttpStatus.NOT_FOUND)
   public Map<String, String> handleNoSuchElementException(NoSuchElementException ex) {
-    log.error("NoSuchElementException", ex.toString());
+    log.warn("Not found: {}", LogSummary.of(ex));
     return Map.of("message", ex.toString());
   }
 
   @ExceptionHandler(IllegalArgumentException.class)
   @ResponseStatus(code = HttpStatus.NOT_FOUND)
   public Map<String, String> handleIllegalArgumentException(IllegalArgumentException ex) {
-    log.error("NoSuchElementException", ex.toString());
+    log.warn("Rejected: {}", LogSummary.of(ex));
+    return Map.of("message", ex.toString());
+  }
+
+  /*
+   * An Idempotency-Key sent again with a different request body is answered with 422
+   * Unprocessable Entity, so the client can tell it apart from a missing resource.
+   */
+
+  @ExceptionHandler(IdempotencyKeyReusedException.class)
+  @ResponseStatus(code = HttpStatus.UNPROCESSABLE_ENTITY)
+  public Map<String, String> handleIdempotencyKeyReusedException(
+      IdempotencyKeyReusedException ex) {
+    log.warn("Rejected: {}", LogSummary.of(ex));
     return Map.of("message", ex.toString());
   }
+
+  /*
+   * An update sent with an If-Match header that names another version than the current one is
+   * answered with 412 Precondition Failed. An update that kept losing to concurrent writes, even
+   * after SiteService retried it, is answered with 409 Conflict. In both cases the client should
+   * read the row again before retrying.
+   */
+
+  @ExceptionHandler(VersionMismatchException.class)
+  @ResponseStatus(code = HttpStatus.PRECONDITION_FAILED)
+  public Map<String, String> handleVersionMismatchException(VersionMismatchException ex) {
+    log.warn("Precondition failed: {}", LogSummary.of(ex));
+    return Map.of("message", ex.toString());
+  }
+
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  @ResponseStatus(code = HttpStatus.CONFLICT)
+  public Map<String, String> handleOptimisticLockingFailureException(
+      OptimisticLockingFailureException ex) {
+    log.warn("Conflict: {}", LogSummary.of(ex));
+    return Map.of("message", "The row was changed by another request; read it again and retry.");
+  }
 }
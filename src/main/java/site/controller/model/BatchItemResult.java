@@ -0,0 +1,32 @@
+package site.controller.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * The DTO class BatchItemResult is created below. One BatchItemResult is returned for every item of
+ * a batch request, in the same order as the request. The index is the position of the item in the
+ * request, the id is the Id of the saved or deleted row and the status is one of CREATED, UPDATED,
+ * DELETED, ATTACHED, DETACHED, UNCHANGED, INVALID or FAILED. The message explains why an item was
+ * INVALID or FAILED.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchItemResult {
+
+  public static final String CREATED = "CREATED";
+  public static final String UPDATED = "UPDATED";
+  public static final String DELETED = "DELETED";
+  public static final String ATTACHED = "ATTACHED";
+  public static final String DETACHED = "DETACHED";
+  public static final String UNCHANGED = "UNCHANGED";
+  public static final String INVALID = "INVALID";
+  public static final String FAILED = "FAILED";
+
+  private int index;
+  private Long id;
+  private String status;
+  private String message;
+}
@@ -0,0 +1,30 @@
+package site.controller.model;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * One event of the change feed: which site, project or team member changed, how, and when. The
+ * changeId is the position in the feed; pass the last one seen as "after" to read on from there.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeEventData {
+
+  public static final String SITE = "site";
+  public static final String PROJECT = "project";
+  public static final String TEAM_MEMBER = "teamMember";
+
+  public static final String CREATED = "CREATED";
+  public static final String UPDATED = "UPDATED";
+  public static final String DELETED = "DELETED";
+
+  private Long changeId;
+  private String entityType;
+  private Long entityId;
+  private String operation;
+  private Instant createdAt;
+}
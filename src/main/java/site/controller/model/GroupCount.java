@@ -0,0 +1,27 @@
+package site.controller.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * One group of a statistics query and the number of rows in it. Groups of a site or project carry
+ * its Id and name; groups of a value, such as a project type or team member role, carry only the
+ * value as name (null for rows without one). Rows are selected straight into this class by the
+ * grouped queries in the DAOs.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GroupCount {
+
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private Long id;
+  private String name;
+  private Long count;
+
+  public GroupCount(String name, Long count) {
+    this(null, name, count);
+  }
+}
@@ -1,6 +1,9 @@
 package site.controller.model;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -10,19 +13,42 @@ import site.entity.TeamMember;
 /*
  * The DTO class ProjectData is created below. The fields from the project entity are copied
  * and @Data and @NoArgsConstructor from the lombok package are added.
+ * 
+ * Depth 0 is the project alone and depth 1 (FULL_DEPTH) adds its team members. At depth 0 the team
+ * members are null and left out of the JSON.
  */
 @Data
 @NoArgsConstructor
+@JsonFilter(ProjectData.FIELDS_FILTER)
 public class ProjectData {
 
+  public static final String FIELDS_FILTER = "projectFields";
+  public static final int FULL_DEPTH = 1;
+
   private Long projectId;
   private String projectName;
   private String projectLength;
   private String projectType;
+  private Long version;
 
   // Data type of the team members field changed to TeamMemeberData.
+  @JsonInclude(JsonInclude.Include.NON_NULL)
   private Set<TeamMemberData> teamMembers = new HashSet<>();
 
+  /*
+   * Constructor: takes the scalar project fields as parameters. Used by the read-only projection
+   * queries in ProjectDao. The team members are added by the caller.
+   */
+
+  public ProjectData(Long projectId, String projectName, String projectLength,
+      String projectType, Long version) {
+    this.projectId = projectId;
+    this.projectName = projectName;
+    this.projectLength = projectLength;
+    this.projectType = projectType;
+    this.version = version;
+  }
+
   /*
    * Constructor: takes project as a parameter. 
    * 
@@ -30,18 +56,49 @@ public class ProjectData {
    */
   
   public ProjectData(Project project) {
+    this(project, FULL_DEPTH);
+  }
+
+  /*
+   * Constructor: takes project and depth as parameters. The lazy team members collection is only
+   * read when depth is 1 or more.
+   */
+
+  public ProjectData(Project project, int depth) {
     projectId = project.getProjectId();
     projectName = project.getProjectName();
     projectLength = project.getProjectLength();
     projectType = project.getProjectType();
+    version = project.getVersion();
 
     /*
      * For loop is used to set team member fields to their respective TeamMemberData.
      */
 
+    if (depth < 1) {
+      teamMembers = null;
+      return;
+    }
+
     for (TeamMember teamMember : project.getTeamMembers()) {
       teamMembers.add(new TeamMemberData(teamMember));
     }
   }
+
+  /*
+   * Returns a copy of this ProjectData cut down to the given depth. The TeamMemberData instances
+   * are shared with this instance, since TeamMemberData has no associations of its own.
+   */
+
+  public ProjectData toDepth(int depth) {
+    ProjectData copy = new ProjectData(projectId, projectName, projectLength, projectType, version);
+
+    if (depth < 1 || Objects.isNull(teamMembers)) {
+      copy.teamMembers = null;
+    } else {
+      copy.teamMembers.addAll(teamMembers);
+    }
+    return copy;
+  }
 }
 
@@ -0,0 +1,24 @@
+package site.controller.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * One result of a search: what kind of row matched, its Id and name, and how well it matched. A
+ * higher score is a better match.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchHit {
+
+  public static final String SITE = "site";
+  public static final String PROJECT = "project";
+  public static final String TEAM_MEMBER = "teamMember";
+
+  private String type;
+  private Long id;
+  private String name;
+  private double score;
+}
@@ -0,0 +1,20 @@
+package site.controller.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * One page of search hits, best match first, together with the total number of matching rows.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SearchResults {
+
+  private String query;
+  private int total;
+  private int offset;
+  private List<SearchHit> hits;
+}
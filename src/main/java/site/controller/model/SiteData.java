@@ -1,6 +1,9 @@
 package site.controller.model;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -10,20 +13,31 @@ import site.entity.Site;
 /*
  * The DTO class SiteData is created below. The fields from the Site entity are copied and @Data
  * and @NoArgsConstructor from the lombok package are added.
+ * 
+ * Depth 0 is the site alone, depth 1 adds its projects and depth 2 (FULL_DEPTH) adds the team
+ * members of those projects. Associations below the requested depth are left null and are not
+ * written to the JSON. The FIELDS_FILTER filter lets the controller serialize only the fields a
+ * caller asked for.
  */
 @Data
 @NoArgsConstructor
+@JsonFilter(SiteData.FIELDS_FILTER)
 public class SiteData {
 
+  public static final String FIELDS_FILTER = "siteFields";
+  public static final int FULL_DEPTH = 2;
+
   private Long siteId;
   private String siteName;
   private String siteAddress;
   private String siteState;
   private String siteZip;
   private String sitePhone;
+  private Long version;
 
 
   // Data type of the Project field changed to ProjectData.
+  @JsonInclude(JsonInclude.Include.NON_NULL)
   private Set<ProjectData> projects = new HashSet<>();
 
   /*
@@ -33,19 +47,60 @@ public class SiteData {
    */
   
   public SiteData(Site site) {
+    this(site, FULL_DEPTH);
+  }
+
+  /*
+   * Constructor: takes site and depth as parameters. Only the associations within the depth are
+   * read from the site, so a shallow SiteData never touches the lazy projects collection.
+   */
+
+  public SiteData(Site site, int depth) {
     siteId = site.getSiteId();
     siteName = site.getSiteName();
     siteAddress = site.getSiteAddress();
     siteState = site.getSiteState();
     siteZip = site.getSiteZip();
     sitePhone = site.getSitePhone();
+    version = site.getVersion();
 
     /*
      * For loop is used to set project fields to their respective ProjectData.
      */
     
+    if (depth < 1) {
+      projects = null;
+      return;
+    }
+
     for (Project project : site.getProjects()) {
-      projects.add(new ProjectData(project));
+      projects.add(new ProjectData(project, depth - 1));
+    }
+  }
+
+  /*
+   * Returns a copy of this SiteData cut down to the given depth. Used to answer shallow requests
+   * from a cached full SiteData without changing the cached instance.
+   */
+
+  public SiteData toDepth(int depth) {
+    SiteData copy = new SiteData();
+    copy.siteId = siteId;
+    copy.siteName = siteName;
+    copy.siteAddress = siteAddress;
+    copy.siteState = siteState;
+    copy.siteZip = siteZip;
+    copy.sitePhone = sitePhone;
+    copy.version = version;
+
+    if (depth < 1 || Objects.isNull(projects)) {
+      copy.projects = null;
+      return copy;
+    }
+
+    for (ProjectData project : projects) {
+      copy.projects.add(project.toDepth(depth - 1));
     }
+    return copy;
   }
 }
@@ -0,0 +1,22 @@
+package site.controller.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * Totals of the site, project and team member tables together with the number of projects of
+ * each type and of team members in each role.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SiteStats {
+
+  private long sites;
+  private long projects;
+  private long teamMembers;
+  private List<GroupCount> projectsByType;
+  private List<GroupCount> teamMembersByRole;
+}
@@ -1,5 +1,6 @@
 package site.controller.model;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import site.entity.TeamMember;
@@ -10,12 +11,14 @@ import site.entity.TeamMember;
  */
 @Data
 @NoArgsConstructor
+@AllArgsConstructor
 public class TeamMemberData {
 
   private Long teamMemberId;
   private String teamMemberRole;
   private String teamMemberName;
   private String teamMemberPhone;
+  private Long version;
 
   /*
    * Constructor: takes a teamMember object as a parameter.
@@ -28,6 +31,7 @@ public class TeamMemberData {
     teamMemberRole = teamMember.getTeamMemberRole();
     teamMemberName = teamMember.getTeamMemberName();
     teamMemberPhone = teamMember.getTeamMemberPhone();
+    version = teamMember.getVersion();
 
   }
 }
@@ -0,0 +1,39 @@
+package site.dao;
+
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import site.controller.model.ChangeEventData;
+import site.entity.ChangeEvent;
+
+/*
+ * Data Layer Interface ChangeEventDao is created below. It reads the change feed from the
+ * change_event table. Every read walks the primary key from a change Id, so reading the tail of the
+ * feed costs the same no matter how long the feed is.
+ */
+public interface ChangeEventDao extends JpaRepository<ChangeEvent, Long> {
+
+  /*
+   * Events after the given change Id that were created no later than visibleBefore, in change Id
+   * order.
+   */
+  @Query("select new site.controller.model.ChangeEventData(e.changeId, e.entityType, e.entityId,"
+      + " e.operation, e.createdAt) from ChangeEvent e where e.changeId > :after"
+      + " and e.createdAt <= :visibleBefore order by e.changeId")
+  List<ChangeEventData> findChanges(Long after, Instant visibleBefore, Limit limit);
+
+  /*
+   * Change Ids of the newest events created no later than visibleBefore, newest first. Called with
+   * Limit.of(1) to find the end of the visible feed.
+   */
+  @Query("select e.changeId from ChangeEvent e where e.createdAt <= :visibleBefore"
+      + " order by e.changeId desc")
+  List<Long> findLatestChangeIds(Instant visibleBefore, Limit limit);
+
+  @Modifying
+  @Query("delete from ChangeEvent e where e.createdAt < :createdBefore")
+  int deleteCreatedBefore(Instant createdBefore);
+}
@@ -1,7 +1,17 @@
 package site.dao;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import site.controller.model.GroupCount;
+import site.controller.model.ProjectData;
 import site.entity.Project;
+import site.entity.Site;
 
 /*
  * Data Layer Interface ProjectDao is created below. This interface extends JpaRepository. This DAO
@@ -11,4 +21,149 @@ import site.entity.Project;
 
 public interface ProjectDao extends JpaRepository<Project, Long> {
 
+  /*
+   * Loads a single project together with its team members in one SELECT.
+   */
+  @EntityGraph(attributePaths = "teamMembers")
+  Optional<Project> findWithTeamMembersByProjectId(Long projectId);
+
+  /*
+   * Read-only projection of the projects, optionally filtered by project type and by the state of
+   * their site (a null filter matches everything), in the given order. The scalar columns are
+   * selected straight into ProjectData, so no Project entity is created or tracked by the
+   * persistence context. The filters are plain equality predicates on indexed columns.
+   */
+  @Query("select new site.controller.model.ProjectData(p.projectId, p.projectName, p.projectLength,"
+      + " p.projectType, p.version) from Project p left join p.site s"
+      + " where (:projectType is null or p.projectType = :projectType)"
+      + " and (:siteState is null or s.siteState = :siteState)")
+  List<ProjectData> findProjectData(String projectType, String siteState, Sort sort);
+
+  /*
+   * Read-only projection of the project/team member pairs of the projects matched by the same
+   * filters, used together with findProjectData() to attach the team members to each project.
+   */
+  @Query("select new site.dao.ProjectTeamMemberRow(p.projectId, t.teamMemberId, t.teamMemberRole,"
+      + " t.teamMemberName, t.teamMemberPhone, t.version) from Project p join p.teamMembers t"
+      + " left join p.site s where (:projectType is null or p.projectType = :projectType)"
+      + " and (:siteState is null or s.siteState = :siteState)")
+  List<ProjectTeamMemberRow> findProjectTeamMemberRows(String projectType, String siteState);
+
+  /*
+   * Initializes the team members collection of every project belonging to the given sites, in one
+   * SELECT.
+   */
+  @Query("select distinct p from Project p left join fetch p.teamMembers where p.site in :sites")
+  List<Project> fetchTeamMembersBySites(Collection<Site> sites);
+
+  /*
+   * Returns which of the given project Ids exist and belong to the site. Used to validate a batch
+   * before it is written.
+   */
+  @Query("select p.projectId from Project p where p.site.siteId = :siteId"
+      + " and p.projectId in :projectIds")
+  List<Long> findExistingProjectIds(Long siteId, Collection<Long> projectIds);
+
+  /*
+   * Returns the version of the project without loading it or its team members.
+   */
+  @Query("select p.version from Project p where p.projectId = :projectId")
+  Optional<Long> findVersionByProjectId(Long projectId);
+
+  /*
+   * Returns which of the given project Ids exist, in any site.
+   */
+  @Query("select p.projectId from Project p where p.projectId in :projectIds")
+  List<Long> findExistingProjectIds(Collection<Long> projectIds);
+
+  /*
+   * Returns the site Id of the project without loading the project. Empty if the project does not
+   * exist.
+   */
+  @Query("select p.site.siteId from Project p where p.projectId = :projectId")
+  Optional<Long> findSiteIdByProjectId(Long projectId);
+
+  /*
+   * Id lookups used by the bulk deletes to find the rows affected by a delete without loading
+   * them: the projects of some sites, the sites of some projects and the projects of some team
+   * members.
+   */
+  @Query("select p.projectId from Project p where p.site.siteId in :siteIds")
+  List<Long> findProjectIdsBySiteIds(Collection<Long> siteIds);
+
+  @Query("select distinct p.site.siteId from Project p where p.projectId in :projectIds")
+  List<Long> findSiteIdsByProjectIds(Collection<Long> projectIds);
+
+  @Query("select distinct p.projectId from Project p join p.teamMembers t"
+      + " where t.teamMemberId in :teamMemberIds")
+  List<Long> findProjectIdsByTeamMemberIds(Collection<Long> teamMemberIds);
+
+  /*
+   * Number of team members of every project, in projectId order, counted with one grouped SELECT
+   * over the project_team_member join table. Projects without team members are included with a
+   * count of 0.
+   */
+  @Query("select new site.controller.model.GroupCount(p.projectId, p.projectName, count(t))"
+      + " from Project p left join p.teamMembers t group by p.projectId, p.projectName"
+      + " order by p.projectId")
+  List<GroupCount> countTeamMembersPerProject();
+
+  /*
+   * Number of projects of each project type, in type order.
+   */
+  @Query("select new site.controller.model.GroupCount(p.projectType, count(p)) from Project p"
+      + " group by p.projectType order by p.projectType")
+  List<GroupCount> countProjectsByType();
+
+  /*
+   * Set-based deletes of projects and of their rows in the project_team_member join table, and
+   * the matching version update. The join table has no entity, so its rows are deleted with native
+   * SQL; the rows of the projects must go before the projects themselves. These statements bypass
+   * the persistence context, which is flushed before each of them and, after the deletes, cleared.
+   */
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query(value = "delete from project_team_member where project_id in (:projectIds)",
+      nativeQuery = true)
+  int deleteTeamMemberLinks(Collection<Long> projectIds);
+
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query(value = "delete from project_team_member where project_id in"
+      + " (select project_id from project where site_id in (:siteIds))", nativeQuery = true)
+  int deleteTeamMemberLinksBySiteIds(Collection<Long> siteIds);
+
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query("delete from Project p where p.projectId in :projectIds")
+  int deleteProjects(Collection<Long> projectIds);
+
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query("delete from Project p where p.site.siteId in :siteIds")
+  int deleteProjectsBySiteIds(Collection<Long> siteIds);
+
+  @Modifying(flushAutomatically = true)
+  @Query("update Project p set p.version = p.version + 1 where p.projectId in :projectIds")
+  int incrementVersions(Collection<Long> projectIds);
+
+  /*
+   * Membership changes written straight to the project_team_member join table, so adding a team
+   * member to a project or removing it costs one indexed statement however many members the
+   * project has; neither Project.teamMembers nor TeamMember.project is loaded. The insert skips
+   * team members that do not exist and pairs that are already there, and both return the number of
+   * join rows written.
+   */
+  @Query(value = "select team_member_id from project_team_member where project_id = :projectId"
+      + " and team_member_id in (:teamMemberIds)", nativeQuery = true)
+  List<Long> findLinkedTeamMemberIds(Long projectId, Collection<Long> teamMemberIds);
+
+  @Modifying(flushAutomatically = true)
+  @Query(value = "insert into project_team_member (project_id, team_member_id)"
+      + " select :projectId, t.team_member_id from team_member t"
+      + " where t.team_member_id in (:teamMemberIds) and not exists (select 1"
+      + " from project_team_member l where l.project_id = :projectId"
+      + " and l.team_member_id = t.team_member_id)", nativeQuery = true)
+  int linkTeamMembers(Long projectId, Collection<Long> teamMemberIds);
+
+  @Modifying(flushAutomatically = true)
+  @Query(value = "delete from project_team_member where project_id = :projectId"
+      + " and team_member_id in (:teamMemberIds)", nativeQuery = true)
+  int unlinkTeamMembers(Long projectId, Collection<Long> teamMemberIds);
 }
@@ -0,0 +1,11 @@
+package site.dao;
+
+/*
+ * Read-only projection of one row of the project_team_member join: the project Id together with
+ * the scalar fields of one of its team members. Rows are selected straight into this record by
+ * ProjectDao, so no TeamMember entity is created or tracked by the persistence context.
+ */
+
+public record ProjectTeamMemberRow(Long projectId, Long teamMemberId, String teamMemberRole,
+    String teamMemberName, String teamMemberPhone, Long teamMemberVersion) {
+}
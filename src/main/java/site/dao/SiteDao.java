@@ -1,6 +1,14 @@
 package site.dao;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import site.controller.model.GroupCount;
 import site.entity.Site;
 
 /*
@@ -10,4 +18,69 @@ import site.entity.Site;
  */
 public interface SiteDao extends JpaRepository<Site, Long> {
 
+  /*
+   * Keyset page of sites: returns at most limit sites with a siteId greater than the given siteId,
+   * ordered by siteId. The primary key index is used to seek to the start of the page, so every
+   * page costs the same no matter how deep into the table it is.
+   */
+  List<Site> findBySiteIdGreaterThanOrderBySiteIdAsc(Long siteId, Limit limit);
+
+  /*
+   * Loads a single site together with its projects and their team members in one SELECT.
+   */
+  @EntityGraph(attributePaths = {"projects", "projects.teamMembers"})
+  Optional<Site> findWithProjectsBySiteId(Long siteId);
+
+  /*
+   * Loads a single site together with its projects, but not their team members, in one SELECT.
+   */
+  @EntityGraph(attributePaths = "projects")
+  Optional<Site> findWithProjectsOnlyBySiteId(Long siteId);
+
+  /*
+   * Read-only projection of the searchable fields of every site, used to build the search index.
+   */
+  @Query("select new site.dao.SiteSearchRow(s.siteId, s.siteName, s.siteAddress) from Site s")
+  List<SiteSearchRow> findSiteSearchRows();
+
+  /*
+   * Initializes the projects collection of sites that are already loaded, in one SELECT. The
+   * sites are not paged by this query, so it is safe to use after the keyset query above.
+   */
+  @Query("select distinct s from Site s left join fetch s.projects where s in :sites")
+  List<Site> fetchProjects(Collection<Site> sites);
+
+  /*
+   * Returns which of the given site Ids exist. Used to validate a batch before it is written.
+   */
+  @Query("select s.siteId from Site s where s.siteId in :siteIds")
+  List<Long> findExistingSiteIds(Collection<Long> siteIds);
+
+  /*
+   * Returns the version of the site without loading it or its projects.
+   */
+  @Query("select s.version from Site s where s.siteId = :siteId")
+  Optional<Long> findVersionBySiteId(Long siteId);
+
+  /*
+   * Number of projects of every site, in siteId order, counted with one grouped SELECT. Sites
+   * without projects are included with a count of 0.
+   */
+  @Query("select new site.controller.model.GroupCount(s.siteId, s.siteName, count(p))"
+      + " from Site s left join s.projects p group by s.siteId, s.siteName order by s.siteId")
+  List<GroupCount> countProjectsPerSite();
+
+  /*
+   * Set-based versions of the updates and deletes JPA would otherwise run one site at a time. They
+   * bypass the persistence context, which is flushed before each statement. The delete also clears
+   * it; the version update does not, because SiteService runs it just before commit while the
+   * entities of the transaction are still attached.
+   */
+  @Modifying(flushAutomatically = true)
+  @Query("update Site s set s.version = s.version + 1 where s.siteId in :siteIds")
+  int incrementVersions(Collection<Long> siteIds);
+
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query("delete from Site s where s.siteId in :siteIds")
+  int deleteSites(Collection<Long> siteIds);
 }
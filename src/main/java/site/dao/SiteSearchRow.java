@@ -0,0 +1,9 @@
+package site.dao;
+
+/*
+ * Read-only projection of the searchable fields of one site. Rows are selected straight into this
+ * record by SiteDao when the search index is built, so no Site entity is loaded.
+ */
+
+public record SiteSearchRow(Long siteId, String siteName, String siteAddress) {
+}
@@ -1,6 +1,14 @@
 package site.dao;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import site.controller.model.GroupCount;
+import site.controller.model.TeamMemberData;
 import site.entity.TeamMember;
 
 /*
@@ -10,4 +18,47 @@ import site.entity.TeamMember;
  */
 public interface TeamMemberDao extends JpaRepository<TeamMember, Long> {
 
+  /*
+   * Read-only projection of the team members, optionally filtered by role (a null role matches
+   * everything), in the given order. The columns are selected straight into TeamMemberData, so no
+   * TeamMember entity is created or tracked by the persistence context.
+   */
+  @Query("select new site.controller.model.TeamMemberData(t.teamMemberId, t.teamMemberRole,"
+      + " t.teamMemberName, t.teamMemberPhone, t.version) from TeamMember t"
+      + " where (:teamMemberRole is null or t.teamMemberRole = :teamMemberRole)")
+  List<TeamMemberData> findTeamMemberData(String teamMemberRole, Sort sort);
+
+  /*
+   * Returns which of the given team member Ids exist. Used to validate a batch before it is
+   * written.
+   */
+  @Query("select t.teamMemberId from TeamMember t where t.teamMemberId in :teamMemberIds")
+  List<Long> findExistingTeamMemberIds(Collection<Long> teamMemberIds);
+
+  /*
+   * Returns the version of the team member without loading it.
+   */
+  @Query("select t.version from TeamMember t where t.teamMemberId = :teamMemberId")
+  Optional<Long> findVersionByTeamMemberId(Long teamMemberId);
+
+  /*
+   * Number of team members in each role, in role order.
+   */
+  @Query("select new site.controller.model.GroupCount(t.teamMemberRole, count(t))"
+      + " from TeamMember t group by t.teamMemberRole order by t.teamMemberRole")
+  List<GroupCount> countTeamMembersByRole();
+
+  /*
+   * Set-based delete of team members: their rows in the project_team_member join table go first,
+   * with native SQL since the join table has no entity. Both statements bypass the persistence
+   * context, which is flushed before and cleared after each of them.
+   */
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query(value = "delete from project_team_member where team_member_id in (:teamMemberIds)",
+      nativeQuery = true)
+  int deleteProjectLinks(Collection<Long> teamMemberIds);
+
+  @Modifying(flushAutomatically = true, clearAutomatically = true)
+  @Query("delete from TeamMember t where t.teamMemberId in :teamMemberIds")
+  int deleteTeamMembers(Collection<Long> teamMemberIds);
 }
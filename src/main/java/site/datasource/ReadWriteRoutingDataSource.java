@@ -0,0 +1,294 @@
+package site.datasource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.util.WebUtils;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Routes read-only transactions to a replica and everything else to the primary.
+ * 
+ * A read-only transaction goes to the next healthy replica in turn, unless the client that sent
+ * the request committed a write less than readYourWritesWindow ago; then it goes to the primary, so
+ * a client that just changed something reads its own change back even if the replicas have not
+ * caught up yet. Other clients keep reading from the replicas. The time of the write is kept in a
+ * request attribute for the rest of the request and sent back in the site-last-write cookie for
+ * the requests that follow, so it also holds when the next request reaches another instance (as
+ * long as the clocks of the instances agree). Clients that do not send cookies back only read their
+ * writes within the same request. Transactions outside a request always read from the replicas.
+ * 
+ * Reads of other clients may come from a replica that has not caught up with a write yet, and must
+ * not be cached where the writer would read them. readMayBeStale() tells whether a read would go to
+ * a replica less than maxReplicaLag after a write committed on this instance; SiteDtoCache keeps
+ * such reads out of its shared caches.
+ * 
+ * A replica is healthy when it answers and, if a lag query is configured, is at most maxReplicaLag
+ * behind. The replicas are checked every healthCheckInterval; with no healthy replica every
+ * transaction goes to the primary.
+ * 
+ * The read-only flag of a transaction is only known once the transaction has begun, so this data
+ * source has to sit behind a LazyConnectionDataSourceProxy, which takes the real connection at the
+ * first statement.
+ */
+
+@Slf4j
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource
+    implements DisposableBean {
+
+  static final String PRIMARY = "primary";
+  static final String LAST_WRITE_COOKIE = "site-last-write";
+
+  private static final String LAST_WRITE_ATTRIBUTE =
+      ReadWriteRoutingDataSource.class.getName() + ".lastWrite";
+
+  private final List<Replica> replicas;
+  private final RoutingProperties properties;
+  private final AtomicInteger nextReplica = new AtomicInteger();
+  private final AtomicLong lastWriteAt;
+  private final ScheduledExecutorService healthChecker;
+
+  public ReadWriteRoutingDataSource(DataSource primary, List<HikariDataSource> replicaPools,
+      RoutingProperties properties) {
+    this.properties = properties;
+    this.replicas = replicaPools.stream().map(Replica::new).toList();
+    this.lastWriteAt = new AtomicLong(System.nanoTime() - properties.getMaxReplicaLag().toNanos());
+
+    Map<Object, Object> targets = new HashMap<>();
+    targets.put(PRIMARY, primary);
+
+    for (Replica replica : replicas) {
+      targets.put(replica.name(), replica.pool);
+    }
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(primary);
+
+    long interval = properties.getHealthCheckInterval().toMillis();
+    healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "replica-health");
+      thread.setDaemon(true);
+      return thread;
+    });
+    healthChecker.scheduleWithFixedDelay(this::checkReplicas, 0, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+      if (TransactionSynchronizationManager.isSynchronizationActive()) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+          @Override
+          public void beforeCommit(boolean readOnly) {
+            lastWriteAt.set(System.nanoTime());
+          }
+
+          @Override
+          public void afterCompletion(int status) {
+            if (status == STATUS_COMMITTED) {
+              lastWriteAt.set(System.nanoTime());
+              rememberWrite();
+            }
+          }
+        });
+      }
+      return PRIMARY;
+    }
+
+    if (clientWroteRecently()) {
+      return PRIMARY;
+    }
+
+    for (int attempt = 0; attempt < replicas.size(); attempt++) {
+      Replica replica =
+          replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+
+      if (replica.healthy) {
+        return replica.name();
+      }
+    }
+    return PRIMARY;
+  }
+
+  /*
+   * Health and lag of each replica, for the replicas health indicator.
+   */
+
+  public Map<String, Object> replicaStatus() {
+    Map<String, Object> status = new HashMap<>();
+
+    for (Replica replica : replicas) {
+      status.put(replica.name(), Map.of("healthy", replica.healthy, "lagSeconds",
+          Objects.toString(replica.lagSeconds, "unknown")));
+    }
+    return status;
+  }
+
+  /*
+   * readMayBeStale() method tells whether a read-only transaction of the current thread would go to
+   * a replica while a write committed on this instance less than maxReplicaLag ago may not have
+   * reached it yet. The time is taken before the commit as well as after it, so a read that starts
+   * while the write commits counts too.
+   */
+
+  public boolean readMayBeStale() {
+    return System.nanoTime() - lastWriteAt.get() < properties.getMaxReplicaLag().toNanos()
+        && anyReplicaHealthy() && !clientWroteRecently();
+  }
+
+  public boolean anyReplicaHealthy() {
+    return replicas.stream().anyMatch(replica -> replica.healthy);
+  }
+
+  @Override
+  public void destroy() {
+    healthChecker.shutdownNow();
+    replicas.forEach(replica -> replica.pool.close());
+  }
+
+  /*
+   * rememberWrite() method records a committed write of the current request in a request attribute
+   * and in the site-last-write cookie, as epoch milliseconds. The cookie is left out once the
+   * response is committed.
+   */
+
+  private void rememberWrite() {
+    ServletRequestAttributes attributes = currentRequest();
+
+    if (Objects.isNull(attributes)) {
+      return;
+    }
+
+    long now = System.currentTimeMillis();
+    attributes.getRequest().setAttribute(LAST_WRITE_ATTRIBUTE, now);
+    HttpServletResponse response = attributes.getResponse();
+
+    if (Objects.nonNull(response) && !response.isCommitted()) {
+      ResponseCookie cookie = ResponseCookie.from(LAST_WRITE_COOKIE, Long.toString(now)).path("/")
+          .maxAge(properties.getReadYourWritesWindow().toSeconds() + 1).httpOnly(true)
+          .sameSite("Lax").build();
+      response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+  }
+
+  /*
+   * clientWroteRecently() method tells whether the current request, or the client through the
+   * site-last-write cookie, committed a write less than readYourWritesWindow ago.
+   */
+
+  private boolean clientWroteRecently() {
+    ServletRequestAttributes attributes = currentRequest();
+
+    if (Objects.isNull(attributes)) {
+      return false;
+    }
+
+    HttpServletRequest request = attributes.getRequest();
+    Long lastWrite = (Long) request.getAttribute(LAST_WRITE_ATTRIBUTE);
+
+    if (Objects.isNull(lastWrite)) {
+      Cookie cookie = WebUtils.getCookie(request, LAST_WRITE_COOKIE);
+
+      if (Objects.isNull(cookie)) {
+        return false;
+      }
+
+      try {
+        lastWrite = Long.valueOf(cookie.getValue());
+      } catch (NumberFormatException e) {
+        return false;
+      }
+    }
+    return System.currentTimeMillis() - lastWrite < properties.getReadYourWritesWindow().toMillis();
+  }
+
+  private static ServletRequestAttributes currentRequest() {
+    if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes current) {
+      return current;
+    }
+    return null;
+  }
+
+  private void checkReplicas() {
+    for (Replica replica : replicas) {
+      boolean healthy;
+
+      try (Connection connection = replica.pool.getConnection()) {
+        replica.lagSeconds = lagSeconds(connection);
+        healthy = Objects.nonNull(replica.lagSeconds)
+            && replica.lagSeconds <= properties.getMaxReplicaLag().toSeconds();
+      } catch (SQLException | RuntimeException e) {
+        replica.lagSeconds = null;
+        healthy = false;
+        log.debug("Health check of {} failed", replica.name(), e);
+      }
+
+      if (!replica.checked || healthy != replica.healthy) {
+        log.warn("Replica {} is now {} (lag {}s)", replica.name(),
+            healthy ? "in use" : "skipped", replica.lagSeconds);
+      }
+      replica.healthy = healthy;
+      replica.checked = true;
+    }
+  }
+
+  /*
+   * Returns the replication lag in seconds, 0 when no lag query is configured, or null when the
+   * replica is not replicating.
+   */
+
+  private Long lagSeconds(Connection connection) throws SQLException {
+    String lagQuery = properties.getLagQuery();
+
+    if (Objects.isNull(lagQuery) || lagQuery.isBlank()) {
+      return connection.isValid(2) ? 0L : null;
+    }
+
+    try (Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(lagQuery)) {
+      if (!resultSet.next()) {
+        return null;
+      }
+
+      long lag = resultSet.getLong(properties.getLagColumn());
+      return resultSet.wasNull() ? null : lag;
+    }
+  }
+
+  private static final class Replica {
+    private final HikariDataSource pool;
+    private volatile boolean healthy;
+    private volatile Long lagSeconds;
+    private boolean checked;
+
+    private Replica(HikariDataSource pool) {
+      this.pool = pool;
+    }
+
+    private String name() {
+      return pool.getPoolName();
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package site.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import javax.sql.DataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/*
+ * Replaces the auto-configured data source with ReadWriteRoutingDataSource when
+ * site.datasource.routing.enabled is true. The primary pool is built from spring.datasource as
+ * before; one pool is created for each entry of site.datasource.routing.replicas.
+ */
+
+@Configuration
+@ConditionalOnProperty(prefix = "site.datasource.routing", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(RoutingProperties.class)
+public class RoutingDataSourceConfig {
+
+  @Bean
+  @ConfigurationProperties("spring.datasource.hikari")
+  public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+    HikariDataSource primary =
+        dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    primary.setPoolName(ReadWriteRoutingDataSource.PRIMARY);
+    return primary;
+  }
+
+  @Bean
+  public ReadWriteRoutingDataSource routingDataSource(HikariDataSource primaryDataSource,
+      RoutingProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+    List<HikariDataSource> replicaPools = new ArrayList<>();
+
+    for (RoutingProperties.Replica replica : properties.getReplicas()) {
+      HikariDataSource pool = new HikariDataSource();
+      pool.setPoolName("replica-" + (replicaPools.size() + 1));
+      pool.setJdbcUrl(replica.getUrl());
+      pool.setUsername(replica.getUsername());
+      pool.setPassword(replica.getPassword());
+      pool.setReadOnly(true);
+      int maximumPoolSize = Objects.requireNonNullElse(replica.getMaximumPoolSize(),
+          primaryDataSource.getMaximumPoolSize());
+
+      // Hikari reports -1 until the pool size is set; the replica then keeps Hikari's default.
+      if (maximumPoolSize > 0) {
+        pool.setMaximumPoolSize(maximumPoolSize);
+      }
+      pool.setConnectionTimeout(primaryDataSource.getConnectionTimeout());
+      meterRegistry.ifAvailable(
+          registry -> pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+      replicaPools.add(pool);
+    }
+    return new ReadWriteRoutingDataSource(primaryDataSource, replicaPools, properties);
+  }
+
+  @Bean
+  @Primary
+  public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+    return new LazyConnectionDataSourceProxy(routingDataSource);
+  }
+
+  /*
+   * With open-in-view, Hibernate holds on to the first connection of a request until the request
+   * ends, so every later transaction of the request would run where the first one was routed. The
+   * connection is released after each transaction instead, so each transaction is routed on its
+   * own.
+   */
+
+  @Bean
+  public HibernatePropertiesCustomizer releaseConnectionAfterTransaction() {
+    return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+        PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+  }
+
+  /*
+   * Reports the health and lag of each replica. The application keeps working on the primary
+   * alone, so unhealthy replicas do not make the application DOWN.
+   */
+
+  @Bean
+  public HealthIndicator replicasHealthIndicator(ReadWriteRoutingDataSource routingDataSource) {
+    return () -> Health.up().withDetail("replicasInUse", routingDataSource.anyReplicaHealthy())
+        .withDetails(routingDataSource.replicaStatus()).build();
+  }
+}
@@ -0,0 +1,38 @@
+package site.datasource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import lombok.Data;
+
+/*
+ * Settings of the read/write routing data source, bound from site.datasource.routing. The primary
+ * is still configured with spring.datasource; the replicas are listed here.
+ */
+@Data
+@ConfigurationProperties("site.datasource.routing")
+public class RoutingProperties {
+
+  private boolean enabled;
+  private List<Replica> replicas = new ArrayList<>();
+
+  // After a client commits a write, its read-only transactions go to the primary for this long.
+  private Duration readYourWritesWindow = Duration.ofSeconds(2);
+
+  private Duration maxReplicaLag = Duration.ofSeconds(5);
+  private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+  // Query returning the replication lag in seconds, in the lagColumn column. Empty to skip the lag
+  // check and only check that the replica answers.
+  private String lagQuery = "SHOW REPLICA STATUS";
+  private String lagColumn = "Seconds_Behind_Source";
+
+  @Data
+  public static class Replica {
+    private String url;
+    private String username;
+    private String password;
+    private Integer maximumPoolSize;
+  }
+}
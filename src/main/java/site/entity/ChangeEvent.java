@@ -0,0 +1,50 @@
+package site.entity;
+
+import java.time.Instant;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/*
+ * This section contains the ChangeEvent entity for the change_event table, the outbox of the
+ * change feed. A row is written in the same transaction as every site, project and team member
+ * change, so a change is in the feed exactly when it is committed. The change Id is the position
+ * of the event in the feed.
+ * 
+ * Change Ids come from the auto_increment of change_id, unlike the Ids of the other tables. Each
+ * insert takes the next Id on the writer's own connection, so Ids follow the order in which
+ * transactions reach beforeCommit() on every instance. A block of preallocated Ids would let one
+ * instance commit Id 10 long after another instance committed Id 51, and a sequence table read one
+ * Id at a time would make every writer queue on its row from a second connection.
+ */
+
+@Entity
+@Data
+@NoArgsConstructor
+public class ChangeEvent {
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long changeId;
+
+  @Column(nullable = false)
+  private String entityType;
+
+  @Column(nullable = false)
+  private Long entityId;
+
+  @Column(nullable = false)
+  private String operation;
+
+  @Column(nullable = false)
+  private Instant createdAt;
+
+  public ChangeEvent(String entityType, Long entityId, String operation) {
+    this.entityType = entityType;
+    this.entityId = entityId;
+    this.operation = operation;
+  }
+}
@@ -2,15 +2,23 @@ package site.entity;
 
 import java.util.HashSet;
 import java.util.Set;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.OptimisticLock;
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -20,21 +28,37 @@ import lombok.ToString;
  * based on the relationship defined below. The project table has ManyToOne relationship with the
  * site table. The project table also had ManyToMany relationship with the team_member table. The
  * project table and team_member table are joined by the join table called project_team_member
- * table.
+ * table. The index on project_type and project_name backs filtering by type, and sorting by name
+ * within one type; the index on project_name alone backs sorting all projects by name.
  */
 
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_project_type_name", columnList = "project_type, project_name"),
+    @Index(name = "idx_project_name", columnList = "project_name")})
 @Data
 public class Project {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "project_seq")
+  @SequenceGenerator(name = "project_seq", sequenceName = "project_seq", allocationSize = 50)
   private Long projectId;
   private String projectName;
   private String projectLength;
   private String projectType;
 
+  // Incremented on every update of the project and whenever one of its team members changes.
+  @Version
+  @Column(nullable = false)
+  @ColumnDefault("0")
+  @EqualsAndHashCode.Exclude
+  private Long version;
+
+  // Adding or removing a team member does not go through the version check of the project; the
+  // version is incremented separately when the transaction commits (see SiteService), so team
+  // members added to the same project at once do not conflict.
   @EqualsAndHashCode.Exclude
   @ToString.Exclude
+  @OptimisticLock(excluded = true)
   @ManyToMany(cascade = CascadeType.PERSIST)
   @JoinTable(name = "project_team_member", joinColumns = @JoinColumn(name = "project_id"),
       inverseJoinColumns = @JoinColumn(name = "team_member_id"))
@@ -42,7 +66,7 @@ public class Project {
 
   @EqualsAndHashCode.Exclude
   @ToString.Exclude
-  @ManyToOne(cascade = CascadeType.PERSIST)
+  @ManyToOne(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
   @JoinColumn(name = "site_id")
   private Site site;
 
@@ -2,12 +2,18 @@ package site.entity;
 
 import java.util.HashSet;
 import java.util.Set;
+import org.hibernate.annotations.ColumnDefault;
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -15,13 +21,16 @@ import lombok.ToString;
 /*
  * This section contains the site entity for the site table. JPA will create the table for us based
  * on the relationship defined below. The site table OneToMany relationship with the project table.
+ * The index on site_state backs filtering projects by the state of their site.
  */
 
 @Entity
+@Table(indexes = @Index(name = "idx_site_state", columnList = "site_state"))
 @Data
 public class Site {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "site_seq")
+  @SequenceGenerator(name = "site_seq", sequenceName = "site_seq", allocationSize = 50)
   private Long siteId;
   private String siteName;
   private String siteAddress;
@@ -29,6 +38,14 @@ public class Site {
   private String siteZip;
   private String sitePhone;
 
+  // Incremented on every update of the site and whenever one of its projects or their team members
+  // changes, so it can be used as the ETag of GET /site/{siteId}.
+  @Version
+  @Column(nullable = false)
+  @ColumnDefault("0")
+  @EqualsAndHashCode.Exclude
+  private Long version;
+
   @EqualsAndHashCode.Exclude
   @ToString.Exclude
   @OneToMany(mappedBy = "site", cascade = CascadeType.ALL)
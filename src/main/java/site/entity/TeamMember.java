@@ -2,12 +2,18 @@ package site.entity;
 
 import java.util.HashSet;
 import java.util.Set;
+import org.hibernate.annotations.ColumnDefault;
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.ManyToMany;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -15,19 +21,33 @@ import lombok.ToString;
 /*
  * This section contains the TeamMember entity for the team_member table. JPA will create the table
  * for us based on the relationship defined below. The team_member table has ManyToMany relationship
- * with the project table.
+ * with the project table. The index on team_member_role and team_member_name backs filtering by
+ * role, and sorting by name within one role; the index on team_member_name alone backs sorting all
+ * team members by name.
  */
 
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_team_member_role_name", columnList = "team_member_role, team_member_name"),
+    @Index(name = "idx_team_member_name", columnList = "team_member_name")})
 @Data
 public class TeamMember {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_member_seq")
+  @SequenceGenerator(name = "team_member_seq", sequenceName = "team_member_seq",
+      allocationSize = 50)
   private Long teamMemberId;
   private String teamMemberRole;
   private String teamMemberName;
   private String teamMemberPhone;
 
+  // Incremented on every update of the team member.
+  @Version
+  @Column(nullable = false)
+  @ColumnDefault("0")
+  @EqualsAndHashCode.Exclude
+  private Long version;
+
   @EqualsAndHashCode.Exclude
   @ToString.Exclude
   @ManyToMany(mappedBy = "teamMembers", cascade = CascadeType.PERSIST)
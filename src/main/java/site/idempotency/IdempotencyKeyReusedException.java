@@ -0,0 +1,15 @@
+package site.idempotency;
+
+/*
+ * Thrown when an Idempotency-Key is sent again with a different request body. GlobalErrorHandler
+ * answers it with 422 Unprocessable Entity.
+ */
+
+public class IdempotencyKeyReusedException extends IllegalArgumentException {
+
+  private static final long serialVersionUID = 1L;
+
+  public IdempotencyKeyReusedException(String message) {
+    super(message);
+  }
+}
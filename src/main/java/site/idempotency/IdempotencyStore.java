@@ -0,0 +1,180 @@
+package site.idempotency;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import site.cache.CacheStats;
+import site.cache.ExpiringLruCache;
+
+/*
+ * Remembers the result of create requests sent with an Idempotency-Key header, so a client that
+ * retries a request it never got an answer for gets the first result back instead of creating a
+ * second row.
+ * 
+ * A key is scoped to the operation it was sent with. Results are kept in an ExpiringLruCache of at
+ * most site.idempotency.max-entries keys for site.idempotency.ttl. A request that fails is not
+ * remembered, so it can be retried with the same key.
+ * 
+ * A duplicate that arrives while the first request is still running waits for it and gets the
+ * same result or exception, so only one of them reaches SiteService. Reusing a key for a different
+ * request body is rejected with IdempotencyKeyReusedException.
+ * 
+ * Bodies are told apart by the SHA-256 digest of their canonical JSON: the application's
+ * ObjectMapper with properties and map entries sorted, so the same body always gives the same
+ * bytes. A hash code would let two different bodies pass as the same request.
+ */
+
+@Component
+public class IdempotencyStore {
+
+  public static final String HEADER = "Idempotency-Key";
+  public static final int MAX_KEY_LENGTH = 255;
+
+  private final ExpiringLruCache<String, Result> results;
+  private final ConcurrentHashMap<String, Running> running = new ConcurrentHashMap<>();
+  private final ObjectMapper canonicalMapper;
+
+  private final Counter executed;
+  private final Counter replayed;
+  private final Counter coalesced;
+
+  public IdempotencyStore(MeterRegistry meterRegistry, ObjectMapper objectMapper,
+      @Value("${site.idempotency.max-entries:10000}") int maxEntries,
+      @Value("${site.idempotency.ttl:24h}") Duration ttl) {
+    this.results = new ExpiringLruCache<>(maxEntries, ttl);
+    this.canonicalMapper = objectMapper.copy()
+        .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+        .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    this.executed = outcomeCounter(meterRegistry, "executed");
+    this.replayed = outcomeCounter(meterRegistry, "replayed");
+    this.coalesced = outcomeCounter(meterRegistry, "coalesced");
+  }
+
+  /*
+   * execute() method runs the action once per operation and idempotency key and returns its result
+   * for every request with that key. Without a key the action simply runs. The request body is only
+   * used to tell whether a repeated key belongs to the same request.
+   */
+
+  @SuppressWarnings("unchecked")
+  public <T> T execute(String idempotencyKey, String operation, Object request,
+      Supplier<T> action) {
+    if (Objects.isNull(idempotencyKey)) {
+      return action.get();
+    }
+
+    if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+      throw new IllegalArgumentException(
+          HEADER + " must be between 1 and " + MAX_KEY_LENGTH + " characters");
+    }
+
+    String key = operation + " " + idempotencyKey;
+    String fingerprint = fingerprint(request);
+
+    Result result = results.get(key);
+
+    if (Objects.nonNull(result)) {
+      checkSameRequest(result.fingerprint(), fingerprint, idempotencyKey);
+      replayed.increment();
+      return (T) result.value();
+    }
+
+    Running first = new Running(fingerprint, new CompletableFuture<>());
+    Running other = running.putIfAbsent(key, first);
+
+    if (Objects.nonNull(other)) {
+      checkSameRequest(other.fingerprint(), fingerprint, idempotencyKey);
+      coalesced.increment();
+      return (T) join(other.future());
+    }
+
+    try {
+      /*
+       * The first request may have finished between the lookup above and putIfAbsent().
+       */
+      result = results.get(key);
+
+      if (Objects.nonNull(result)) {
+        checkSameRequest(result.fingerprint(), fingerprint, idempotencyKey);
+        first.future().complete(result.value());
+        replayed.increment();
+        return (T) result.value();
+      }
+
+      T value = action.get();
+      results.putIfFresh(key, new Result(fingerprint, value), results.generation());
+      first.future().complete(value);
+      executed.increment();
+      return value;
+    } catch (RuntimeException e) {
+      first.future().completeExceptionally(e);
+      throw e;
+    } finally {
+      running.remove(key, first);
+    }
+  }
+
+  public CacheStats stats() {
+    return results.stats();
+  }
+
+  /*
+   * fingerprint() method returns the SHA-256 digest of the canonical JSON of the request body as
+   * hex.
+   */
+
+  private String fingerprint(Object request) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(canonicalMapper.writeValueAsBytes(request)));
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("The request body cannot be serialized", e);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void checkSameRequest(String expected, String actual, String idempotencyKey) {
+    if (!expected.equals(actual)) {
+      throw new IdempotencyKeyReusedException(
+          HEADER + " " + idempotencyKey + " was already used for a different request");
+    }
+  }
+
+  private static Object join(CompletableFuture<Object> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+    return Counter.builder("site.idempotency.requests")
+        .description("Create requests with an Idempotency-Key, by outcome").tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  private record Result(String fingerprint, Object value) {
+  }
+
+  private record Running(String fingerprint, CompletableFuture<Object> future) {
+  }
+}
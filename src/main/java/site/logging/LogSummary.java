@@ -0,0 +1,78 @@
+package site.logging;
+
+import java.util.Collection;
+import java.util.Objects;
+import site.controller.model.ProjectData;
+import site.controller.model.SiteData;
+import site.controller.model.TeamMemberData;
+
+/*
+ * A short description of a request body for the logs, written in place of the toString() of the
+ * whole DTO. The DTO toString() of a site includes every project and team member, so one update of
+ * a large site could write several kilobytes to the log.
+ * 
+ * The summary has the Id, the name and the size of each collection, and never the phone numbers or
+ * addresses. Names are cut to MAX_VALUE_LENGTH characters and the whole summary to MAX_LENGTH;
+ * any other value is written with its toString(), cut to MAX_LENGTH. The summary is built only
+ * when the log event is written, so a log statement that is disabled or sampled out costs one
+ * small allocation.
+ */
+
+public final class LogSummary {
+
+  public static final int MAX_LENGTH = 200;
+  public static final int MAX_VALUE_LENGTH = 40;
+
+  private final Object value;
+
+  private LogSummary(Object value) {
+    this.value = value;
+  }
+
+  public static LogSummary of(Object value) {
+    return new LogSummary(value);
+  }
+
+  @Override
+  public String toString() {
+    return cut(summarize(value), MAX_LENGTH);
+  }
+
+  private static String summarize(Object value) {
+    if (value instanceof SiteData site) {
+      return "site{id=" + site.getSiteId() + ", name=" + text(site.getSiteName()) + ", state="
+          + text(site.getSiteState()) + ", projects=" + size(site.getProjects()) + "}";
+    }
+
+    if (value instanceof ProjectData project) {
+      return "project{id=" + project.getProjectId() + ", name=" + text(project.getProjectName())
+          + ", type=" + text(project.getProjectType()) + ", teamMembers="
+          + size(project.getTeamMembers()) + "}";
+    }
+
+    if (value instanceof TeamMemberData teamMember) {
+      return "teamMember{id=" + teamMember.getTeamMemberId() + ", name="
+          + text(teamMember.getTeamMemberName()) + ", role="
+          + text(teamMember.getTeamMemberRole()) + "}";
+    }
+
+    if (value instanceof Collection<?> values) {
+      return values.isEmpty() ? "[]"
+          : "[" + values.size() + " items, first=" + summarize(values.iterator().next()) + "]";
+    }
+
+    return String.valueOf(value);
+  }
+
+  private static String size(Collection<?> values) {
+    return Objects.isNull(values) ? "-" : String.valueOf(values.size());
+  }
+
+  private static String text(String value) {
+    return Objects.isNull(value) ? "null" : "\"" + cut(value, MAX_VALUE_LENGTH) + "\"";
+  }
+
+  private static String cut(String value, int maxLength) {
+    return value.length() <= maxLength ? value : value.substring(0, maxLength - 3) + "...";
+  }
+}
@@ -0,0 +1,49 @@
+package site.logging;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/*
+ * Publishes the state of the asynchronous log appenders configured in logback-spring.xml:
+ * site.logging.queue.remaining is the free space in the queue of each async appender, and
+ * site.logging.sampled.out the number of events left out by SamplingFilter. A queue that stays
+ * near empty means INFO events are being dropped (or, for the audit appender, that requests are
+ * waiting for the log).
+ */
+
+@Component
+public class LoggingMetrics implements MeterBinder {
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    if (!(LoggerFactory.getILoggerFactory() instanceof LoggerContext context)) {
+      return;
+    }
+
+    for (Logger logger : context.getLoggerList()) {
+      for (Iterator<Appender<ILoggingEvent>> it = logger.iteratorForAppenders(); it.hasNext();) {
+        if (it.next() instanceof AsyncAppender appender) {
+          Gauge.builder("site.logging.queue.remaining", appender,
+              AsyncAppender::getRemainingCapacity).tag("appender", appender.getName())
+              .register(registry);
+        }
+      }
+    }
+
+    if (context.getObject(SamplingFilter.SAMPLED_OUT) instanceof AtomicLong sampledOut) {
+      FunctionCounter.builder("site.logging.sampled.out", sampledOut, AtomicLong::get)
+          .register(registry);
+    }
+  }
+}
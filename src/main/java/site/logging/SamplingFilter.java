@@ -0,0 +1,60 @@
+package site.logging;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.filter.Filter;
+import ch.qos.logback.core.spi.FilterReply;
+
+/*
+ * Logback filter that keeps one in every "rate" INFO (and lower) events from loggers whose name
+ * starts with "loggerPrefix". Used on the application appender for the per-request logs of the
+ * read endpoints, which are written for every request. WARN and ERROR events and events from other
+ * loggers always pass. The audit logger has its own appender and is never sampled.
+ * 
+ * Sampling is by count rather than at random, so one request in every "rate" is logged. The number
+ * of events left out is kept in the logback context under SAMPLED_OUT for LoggingMetrics. It is an
+ * AtomicLong rather than this filter because the devtools restart class loader loads a second copy
+ * of this class.
+ */
+
+public class SamplingFilter extends Filter<ILoggingEvent> {
+
+  public static final String SAMPLED_OUT = "site.logging.sampledOut";
+
+  private String loggerPrefix = "";
+  private int rate = 1;
+
+  private final AtomicLong seen = new AtomicLong();
+  private final AtomicLong sampledOut = new AtomicLong();
+
+  @Override
+  public void start() {
+    getContext().putObject(SAMPLED_OUT, sampledOut);
+    super.start();
+  }
+
+  @Override
+  public FilterReply decide(ILoggingEvent event) {
+    if (rate <= 1 || event.getLevel().isGreaterOrEqual(Level.WARN)
+        || !event.getLoggerName().startsWith(loggerPrefix)) {
+      return FilterReply.NEUTRAL;
+    }
+
+    if (seen.getAndIncrement() % rate == 0) {
+      return FilterReply.NEUTRAL;
+    }
+
+    sampledOut.incrementAndGet();
+    return FilterReply.DENY;
+  }
+
+  public void setLoggerPrefix(String loggerPrefix) {
+    this.loggerPrefix = Objects.isNull(loggerPrefix) ? "" : loggerPrefix;
+  }
+
+  public void setRate(int rate) {
+    this.rate = rate;
+  }
+}
@@ -0,0 +1,24 @@
+package site.metrics;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+ * Registers SqlStatementInspector and SqlTimingListener with Hibernate so the JDBC statements of
+ * each request can be counted and timed by RequestMetricsFilter.
+ */
+
+@Configuration
+public class MetricsConfig {
+
+  @Bean
+  public HibernatePropertiesCustomizer sqlRecordingCustomizer() {
+    return properties -> {
+      properties.put(AvailableSettings.STATEMENT_INSPECTOR, new SqlStatementInspector());
+      properties.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER,
+          SqlTimingListener.class.getName());
+    };
+  }
+}
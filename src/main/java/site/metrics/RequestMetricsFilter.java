@@ -0,0 +1,82 @@
+package site.metrics;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Records the number of JDBC statements and the time spent executing them for every request, per
+ * endpoint, as the site.jdbc.statements and site.jdbc.time meters. Request latency and rate per
+ * endpoint are recorded by Spring Boot as http.server.requests. All of them can be scraped from
+ * /actuator/prometheus.
+ * 
+ * A request that takes longer than site.metrics.slow-request-threshold is logged as a warning with
+ * the SQL it executed, so slow requests can be traced without turning on SQL logging for every
+ * request.
+ * 
+ * Statements issued after the handler returns, such as the pages read by the streaming endpoints,
+ * run on another thread and are not recorded.
+ */
+
+@Component
+@Slf4j
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+  private final MeterRegistry meterRegistry;
+  private final long slowRequestNanos;
+
+  public RequestMetricsFilter(MeterRegistry meterRegistry,
+      @Value("${site.metrics.slow-request-threshold:500ms}") Duration slowRequestThreshold) {
+    this.meterRegistry = meterRegistry;
+    this.slowRequestNanos = slowRequestThreshold.toNanos();
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain filterChain) throws ServletException, IOException {
+    long startedAt = System.nanoTime();
+    SqlRecorder.Recording recording = SqlRecorder.start();
+
+    try {
+      filterChain.doFilter(request, response);
+    } finally {
+      SqlRecorder.stop();
+      record(request, response, recording, System.nanoTime() - startedAt);
+    }
+  }
+
+  private void record(HttpServletRequest request, HttpServletResponse response,
+      SqlRecorder.Recording recording, long elapsedNanos) {
+    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    String uri = Objects.isNull(pattern) ? "UNKNOWN" : pattern.toString();
+    String method = request.getMethod();
+
+    DistributionSummary.builder("site.jdbc.statements")
+        .description("JDBC statements executed per request").tag("uri", uri).tag("method", method)
+        .publishPercentiles(0.5, 0.99).register(meterRegistry).record(recording.statements());
+
+    Timer.builder("site.jdbc.time").description("Time spent executing JDBC statements per request")
+        .tag("uri", uri).tag("method", method).publishPercentiles(0.5, 0.99)
+        .register(meterRegistry).record(recording.jdbcNanos(), TimeUnit.NANOSECONDS);
+
+    if (elapsedNanos >= slowRequestNanos) {
+      log.warn("Slow request {} {} status={} time={}ms jdbcStatements={} jdbcTime={}ms sql={}",
+          method, request.getRequestURI(), response.getStatus(),
+          TimeUnit.NANOSECONDS.toMillis(elapsedNanos), recording.statements(),
+          TimeUnit.NANOSECONDS.toMillis(recording.jdbcNanos()), recording.sql());
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package site.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/*
+ * Collects the JDBC statements executed by the current thread while a request is being handled.
+ * RequestMetricsFilter starts a recording when a request comes in and stops it when the response
+ * is complete. SqlStatementInspector and SqlTimingListener are called by Hibernate and add to the
+ * recording of their thread, if there is one.
+ * 
+ * Only the first MAX_SQL statements are kept, so a request that issues thousands of statements
+ * still has a bounded recording.
+ */
+
+public final class SqlRecorder {
+
+  static final int MAX_SQL = 50;
+
+  private static final ThreadLocal<Recording> CURRENT = new ThreadLocal<>();
+
+  private SqlRecorder() {}
+
+  static Recording start() {
+    Recording recording = new Recording();
+    CURRENT.set(recording);
+    return recording;
+  }
+
+  static void stop() {
+    CURRENT.remove();
+  }
+
+  static void sql(String sql) {
+    Recording recording = CURRENT.get();
+
+    if (Objects.nonNull(recording) && recording.sql.size() < MAX_SQL) {
+      recording.sql.add(sql);
+    }
+  }
+
+  static void executeStart() {
+    Recording recording = CURRENT.get();
+
+    if (Objects.nonNull(recording)) {
+      recording.executeStartedAt = System.nanoTime();
+    }
+  }
+
+  static void executeEnd() {
+    Recording recording = CURRENT.get();
+
+    if (Objects.nonNull(recording)) {
+      recording.statements++;
+      recording.jdbcNanos += System.nanoTime() - recording.executeStartedAt;
+    }
+  }
+
+  static final class Recording {
+    private final List<String> sql = new ArrayList<>();
+    private long executeStartedAt;
+    private int statements;
+    private long jdbcNanos;
+
+    int statements() {
+      return statements;
+    }
+
+    long jdbcNanos() {
+      return jdbcNanos;
+    }
+
+    List<String> sql() {
+      return sql;
+    }
+  }
+}
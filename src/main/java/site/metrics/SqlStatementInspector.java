@@ -0,0 +1,19 @@
+package site.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/*
+ * Hibernate calls inspect() with the SQL of every statement it prepares. The SQL is added to the
+ * recording of the current request and returned unchanged.
+ */
+
+public class SqlStatementInspector implements StatementInspector {
+
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  public String inspect(String sql) {
+    SqlRecorder.sql(sql);
+    return sql;
+  }
+}
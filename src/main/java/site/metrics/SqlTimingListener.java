@@ -0,0 +1,33 @@
+package site.metrics;
+
+import org.hibernate.BaseSessionEventListener;
+
+/*
+ * Hibernate creates one SqlTimingListener per session and calls it around every JDBC execution. A
+ * JDBC batch counts as one statement.
+ */
+
+public class SqlTimingListener extends BaseSessionEventListener {
+
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  public void jdbcExecuteStatementStart() {
+    SqlRecorder.executeStart();
+  }
+
+  @Override
+  public void jdbcExecuteStatementEnd() {
+    SqlRecorder.executeEnd();
+  }
+
+  @Override
+  public void jdbcExecuteBatchStart() {
+    SqlRecorder.executeStart();
+  }
+
+  @Override
+  public void jdbcExecuteBatchEnd() {
+    SqlRecorder.executeEnd();
+  }
+}
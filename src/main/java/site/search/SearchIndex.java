@@ -0,0 +1,313 @@
+package site.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import site.controller.model.SearchHit;
+import site.controller.model.SearchResults;
+
+/*
+ * In-memory inverted index over site names and addresses, project names and team member names.
+ * Text is split into lower-case words, and every word points to the rows that contain it and how
+ * often. A search looks up each word of the query, so it only touches the rows that match instead
+ * of scanning every site, project and team member.
+ * 
+ * Query words of MIN_PREFIX_LENGTH letters or more also match longer words that start with them,
+ * at a lower weight than an exact match. Hits are ranked by TF-IDF: words that appear in few rows
+ * count for more, short names that match count for more than long ones, and rows that match more
+ * of the query words rank higher.
+ * 
+ * The index methods called from a transaction are applied after it commits, so rolled back changes
+ * never reach the index. The index is filled from the database at startup by SearchIndexLoader,
+ * through the load methods. That can run while requests already change rows: a row indexed or
+ * removed after startLoad() keeps its newer state and is skipped by the load.
+ */
+
+@Component
+public class SearchIndex {
+
+  public static final int MAX_PAGE_SIZE = 100;
+
+  private static final Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+  private static final int MIN_PREFIX_LENGTH = 2;
+  private static final double PREFIX_WEIGHT = 0.5;
+
+  private final Map<DocumentKey, Document> documents = new HashMap<>();
+  private final NavigableMap<String, Map<DocumentKey, Integer>> postings = new TreeMap<>();
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  private Set<DocumentKey> changedDuringLoad;
+
+  public void indexSite(Long siteId, String siteName, String siteAddress) {
+    afterCommit(() -> put(new DocumentKey(SearchHit.SITE, siteId), siteName,
+        siteText(siteName, siteAddress), false));
+  }
+
+  public void indexProject(Long projectId, String projectName) {
+    afterCommit(() -> put(new DocumentKey(SearchHit.PROJECT, projectId), projectName,
+        projectName, false));
+  }
+
+  public void indexTeamMember(Long teamMemberId, String teamMemberName) {
+    afterCommit(() -> put(new DocumentKey(SearchHit.TEAM_MEMBER, teamMemberId), teamMemberName,
+        teamMemberName, false));
+  }
+
+  public void removeSite(Long siteId) {
+    afterCommit(() -> remove(new DocumentKey(SearchHit.SITE, siteId)));
+  }
+
+  public void removeProject(Long projectId) {
+    afterCommit(() -> remove(new DocumentKey(SearchHit.PROJECT, projectId)));
+  }
+
+  public void removeTeamMember(Long teamMemberId) {
+    afterCommit(() -> remove(new DocumentKey(SearchHit.TEAM_MEMBER, teamMemberId)));
+  }
+
+  /*
+   * startLoad() and finishLoad() methods enclose a load of the index from the database. The load
+   * methods add rows read by the load, unless the row was indexed or removed since startLoad().
+   */
+
+  public void startLoad() {
+    lock.writeLock().lock();
+
+    try {
+      changedDuringLoad = new HashSet<>();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void finishLoad() {
+    lock.writeLock().lock();
+
+    try {
+      changedDuringLoad = null;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  public void loadSite(Long siteId, String siteName, String siteAddress) {
+    put(new DocumentKey(SearchHit.SITE, siteId), siteName, siteText(siteName, siteAddress), true);
+  }
+
+  public void loadProject(Long projectId, String projectName) {
+    put(new DocumentKey(SearchHit.PROJECT, projectId), projectName, projectName, true);
+  }
+
+  public void loadTeamMember(Long teamMemberId, String teamMemberName) {
+    put(new DocumentKey(SearchHit.TEAM_MEMBER, teamMemberId), teamMemberName, teamMemberName,
+        true);
+  }
+
+  public int size() {
+    lock.readLock().lock();
+
+    try {
+      return documents.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /*
+   * search() method returns one page of the rows matching any word of the query, best match first.
+   * The type, when given, limits the hits to sites, projects or team members. The offset is
+   * clamped at 0 and the page size between 1 and MAX_PAGE_SIZE.
+   */
+
+  public SearchResults search(String query, String type, int offset, int limit) {
+    if (Objects.nonNull(type) && !Set.of(SearchHit.SITE, SearchHit.PROJECT, SearchHit.TEAM_MEMBER)
+        .contains(type)) {
+      throw new IllegalArgumentException("Unknown search type " + type);
+    }
+
+    int from = Math.max(offset, 0);
+    int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+    Set<String> queryWords = new LinkedHashSet<>(words(query));
+    List<SearchHit> hits = new ArrayList<>();
+
+    lock.readLock().lock();
+
+    try {
+      Map<DocumentKey, double[]> scores = new HashMap<>();
+
+      for (String queryWord : queryWords) {
+        for (Map.Entry<DocumentKey, Double> match : matches(queryWord, type).entrySet()) {
+          double[] score = scores.computeIfAbsent(match.getKey(), key -> new double[2]);
+          score[0] += match.getValue();
+          score[1]++;
+        }
+      }
+
+      for (Map.Entry<DocumentKey, double[]> entry : scores.entrySet()) {
+        Document document = documents.get(entry.getKey());
+        double[] score = entry.getValue();
+        double ranked = score[0] / Math.sqrt(document.length()) * score[1] / queryWords.size();
+        hits.add(new SearchHit(entry.getKey().type(), entry.getKey().id(), document.name(),
+            ranked));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    hits.sort(Comparator.comparingDouble(SearchHit::getScore).reversed()
+        .thenComparing(SearchHit::getType).thenComparing(SearchHit::getId));
+    List<SearchHit> page = from >= hits.size() ? List.of()
+        : new ArrayList<>(hits.subList(from, Math.min(from + pageSize, hits.size())));
+    return new SearchResults(query, hits.size(), from, page);
+  }
+
+  /*
+   * Scores every row that contains the query word, or a word starting with it, by the best
+   * matching word: word count in the row times the inverse document frequency of the word.
+   */
+
+  private Map<DocumentKey, Double> matches(String queryWord, String type) {
+    Map<String, Map<DocumentKey, Integer>> words;
+
+    if (queryWord.length() < MIN_PREFIX_LENGTH) {
+      Map<DocumentKey, Integer> exact = postings.get(queryWord);
+      words = Objects.isNull(exact) ? Map.of() : Map.of(queryWord, exact);
+    } else {
+      words = postings.subMap(queryWord, true, queryWord + Character.MAX_VALUE, true);
+    }
+
+    Map<DocumentKey, Double> best = new HashMap<>();
+
+    for (Map.Entry<String, Map<DocumentKey, Integer>> word : words.entrySet()) {
+      double weight = word.getKey().equals(queryWord) ? 1.0 : PREFIX_WEIGHT;
+      double idf = Math.log(1.0 + (double) documents.size() / word.getValue().size());
+
+      for (Map.Entry<DocumentKey, Integer> posting : word.getValue().entrySet()) {
+        if (Objects.isNull(type) || type.equals(posting.getKey().type())) {
+          best.merge(posting.getKey(), weight * posting.getValue() * idf, Math::max);
+        }
+      }
+    }
+    return best;
+  }
+
+  private void put(DocumentKey key, String name, String text, boolean loading) {
+    List<String> words = words(text);
+    Map<String, Integer> wordCounts = new HashMap<>();
+
+    for (String word : words) {
+      wordCounts.merge(word, 1, Integer::sum);
+    }
+
+    lock.writeLock().lock();
+
+    try {
+      if (!applies(key, loading)) {
+        return;
+      }
+      removeDocument(key);
+
+      if (!words.isEmpty()) {
+        documents.put(key, new Document(name, words.size(), wordCounts.keySet()));
+
+        for (Map.Entry<String, Integer> wordCount : wordCounts.entrySet()) {
+          postings.computeIfAbsent(wordCount.getKey(), word -> new HashMap<>()).put(key,
+              wordCount.getValue());
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void remove(DocumentKey key) {
+    lock.writeLock().lock();
+
+    try {
+      applies(key, false);
+      removeDocument(key);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /*
+   * Called with the write lock held. Records a change made while a load is running and returns
+   * false for a row of the load that has been changed since it started.
+   */
+
+  private boolean applies(DocumentKey key, boolean loading) {
+    if (Objects.isNull(changedDuringLoad)) {
+      return true;
+    }
+    if (loading) {
+      return !changedDuringLoad.contains(key);
+    }
+    changedDuringLoad.add(key);
+    return true;
+  }
+
+  private void removeDocument(DocumentKey key) {
+    Document document = documents.remove(key);
+
+    if (Objects.nonNull(document)) {
+      for (String word : document.words()) {
+        Map<DocumentKey, Integer> rows = postings.get(word);
+        rows.remove(key);
+
+        if (rows.isEmpty()) {
+          postings.remove(word);
+        }
+      }
+    }
+  }
+
+  private static String siteText(String siteName, String siteAddress) {
+    return Objects.toString(siteName, "") + " " + Objects.toString(siteAddress, "");
+  }
+
+  private static List<String> words(String text) {
+    List<String> words = new ArrayList<>();
+
+    if (Objects.nonNull(text)) {
+      for (String word : WORD_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+        if (!word.isEmpty()) {
+          words.add(word);
+        }
+      }
+    }
+    return words;
+  }
+
+  private static void afterCommit(Runnable change) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          change.run();
+        }
+      });
+    } else {
+      change.run();
+    }
+  }
+
+  private record DocumentKey(String type, Long id) {
+  }
+
+  private record Document(String name, int length, Set<String> words) {
+  }
+}
@@ -0,0 +1,101 @@
+package site.search;
+
+import java.util.List;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import lombok.extern.slf4j.Slf4j;
+import site.controller.model.ProjectData;
+import site.controller.model.TeamMemberData;
+import site.dao.ProjectDao;
+import site.dao.SiteDao;
+import site.dao.SiteSearchRow;
+import site.dao.TeamMemberDao;
+
+/*
+ * Fills the SearchIndex from the database once all beans are created, which is before the web
+ * server starts taking requests. The rows are read with projection queries in one read-only
+ * transaction; after that the index is kept up to date by SiteService.
+ * 
+ * With site.search.background-load (on in the prod profile) the load runs on its own thread
+ * instead, so reading every row does not delay the start. Until it has finished, searches only
+ * find the rows loaded so far and the rows changed since the start.
+ */
+
+@Component
+@Slf4j
+public class SearchIndexLoader implements SmartInitializingSingleton {
+
+  @Autowired
+  private SearchIndex searchIndex;
+
+  @Autowired
+  private SiteDao siteDao;
+
+  @Autowired
+  private ProjectDao projectDao;
+
+  @Autowired
+  private TeamMemberDao teamMemberDao;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Value("${site.search.background-load:false}")
+  private boolean backgroundLoad;
+
+  @Override
+  public void afterSingletonsInstantiated() {
+    searchIndex.startLoad();
+
+    if (backgroundLoad) {
+      Thread loader = new Thread(this::loadInBackground, "search-index-loader");
+      loader.setDaemon(true);
+      loader.start();
+    } else {
+      load();
+    }
+  }
+
+  private void loadInBackground() {
+    try {
+      load();
+    } catch (RuntimeException e) {
+      searchIndex.finishLoad();
+      log.error("Search index could not be built", e);
+    }
+  }
+
+  private void load() {
+    long start = System.nanoTime();
+    TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.setReadOnly(true);
+
+    Rows rows = transactionTemplate.execute(status -> new Rows(siteDao.findSiteSearchRows(),
+        projectDao.findProjectData(null, null, Sort.unsorted()),
+        teamMemberDao.findTeamMemberData(null, Sort.unsorted())));
+
+    for (SiteSearchRow site : rows.sites()) {
+      searchIndex.loadSite(site.siteId(), site.siteName(), site.siteAddress());
+    }
+
+    for (ProjectData project : rows.projects()) {
+      searchIndex.loadProject(project.getProjectId(), project.getProjectName());
+    }
+
+    for (TeamMemberData teamMember : rows.teamMembers()) {
+      searchIndex.loadTeamMember(teamMember.getTeamMemberId(), teamMember.getTeamMemberName());
+    }
+    searchIndex.finishLoad();
+    log.info("Search index built with {} rows in {} ms", searchIndex.size(),
+        (System.nanoTime() - start) / 1_000_000);
+  }
+
+  private record Rows(List<SiteSearchRow> sites, List<ProjectData> projects,
+      List<TeamMemberData> teamMembers) {
+  }
+}
@@ -0,0 +1,191 @@
+package site.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import site.cache.CacheStats;
+import site.cache.EncodedBody;
+import site.cache.ExpiringLruCache;
+import site.cache.SingleFlight;
+import site.datasource.ReadWriteRoutingDataSource;
+import site.controller.model.ProjectData;
+import site.controller.model.SiteData;
+import site.controller.model.TeamMemberData;
+
+/*
+ * Read-through cache of the SiteData, ProjectData and TeamMemberData returned by the retrieve*ById
+ * methods in SiteService. Each cache is bounded by site.cache.max-entries and entries expire after
+ * site.cache.ttl.
+ * 
+ * The invalidate methods drop the entry straight away and, when called inside a transaction, again
+ * after the transaction commits. The second invalidation removes anything a concurrent reader
+ * loaded from the database before the commit.
+ * 
+ * Reads that are not cached (listings, shallow reads and versions) are coalesced with reads(): a
+ * read that is already running for the same key is joined instead of repeated. readsChanged()
+ * detaches the running reads when anything is written, in the same two steps. The number of reads
+ * that were coalesced is published as site.reads.coalesced.
+ * 
+ * responses() holds the serialized bodies of the listing endpoints, keyed by endpoint and
+ * parameters. A listing can change with any write, so readsChanged() empties it as well. It is
+ * bounded by site.response-cache.max-entries and site.response-cache.ttl.
+ * 
+ * With read replicas, a read routed to a replica shortly after a write may return the data from
+ * before the write (see ReadWriteRoutingDataSource.readMayBeStale()). Such a read would put that
+ * data back into a cache the write has just emptied, or hand it to a client that joins it, where
+ * the writer would read it until the entry expires. getOrLoad() and share() therefore run those
+ * reads on their own: they still return what is cached, but neither cache their result nor join or
+ * can be joined by another read.
+ */
+
+@Component
+public class SiteDtoCache {
+
+  private final ExpiringLruCache<Long, SiteData> sites;
+  private final ExpiringLruCache<Long, ProjectData> projects;
+  private final ExpiringLruCache<Long, TeamMemberData> teamMembers;
+  private final ExpiringLruCache<List<Object>, EncodedBody> responses;
+  private final SingleFlight<List<Object>, Object> reads = new SingleFlight<>();
+  private final ReadWriteRoutingDataSource routingDataSource;
+
+  public SiteDtoCache(MeterRegistry meterRegistry,
+      ObjectProvider<ReadWriteRoutingDataSource> routingDataSource,
+      @Value("${site.cache.max-entries:10000}") int maxEntries,
+      @Value("${site.cache.ttl:60s}") Duration ttl,
+      @Value("${site.response-cache.max-entries:256}") int maxResponses,
+      @Value("${site.response-cache.ttl:60s}") Duration responseTtl) {
+    sites = new ExpiringLruCache<>(maxEntries, ttl);
+    projects = new ExpiringLruCache<>(maxEntries, ttl);
+    teamMembers = new ExpiringLruCache<>(maxEntries, ttl);
+    responses = new ExpiringLruCache<>(maxResponses, responseTtl);
+    this.routingDataSource = routingDataSource.getIfAvailable();
+
+    coalescedCounter(meterRegistry, "site", sites, cache -> cache.stats().coalesced());
+    coalescedCounter(meterRegistry, "project", projects, cache -> cache.stats().coalesced());
+    coalescedCounter(meterRegistry, "teamMember", teamMembers,
+        cache -> cache.stats().coalesced());
+    coalescedCounter(meterRegistry, "response", responses, cache -> cache.stats().coalesced());
+    coalescedCounter(meterRegistry, "other", reads, SingleFlight::coalesced);
+  }
+
+  public ExpiringLruCache<Long, SiteData> sites() {
+    return sites;
+  }
+
+  public ExpiringLruCache<Long, ProjectData> projects() {
+    return projects;
+  }
+
+  public ExpiringLruCache<Long, TeamMemberData> teamMembers() {
+    return teamMembers;
+  }
+
+  public void invalidateSite(Long siteId) {
+    invalidate(sites, siteId);
+  }
+
+  public void invalidateProject(Long projectId) {
+    invalidate(projects, projectId);
+  }
+
+  public void invalidateTeamMember(Long teamMemberId) {
+    invalidate(teamMembers, teamMemberId);
+  }
+
+  public ExpiringLruCache<List<Object>, EncodedBody> responses() {
+    return responses;
+  }
+
+  public SingleFlight<List<Object>, Object> reads() {
+    return reads;
+  }
+
+  /*
+   * getOrLoad() method returns the cached value for the key, or loads it and caches it unless the
+   * load may read a stale replica.
+   */
+
+  public <K, V> V getOrLoad(ExpiringLruCache<K, V> cache, K key, Function<K, V> loader) {
+    if (!readMayBeStale()) {
+      return cache.getOrLoad(key, loader);
+    }
+
+    V cached = cache.get(key);
+    return Objects.nonNull(cached) ? cached : loader.apply(key);
+  }
+
+  /*
+   * share() method runs a read through reads(), or on its own if it may read a stale replica.
+   */
+
+  @SuppressWarnings("unchecked")
+  public <T> T share(List<Object> key, Supplier<T> read) {
+    if (readMayBeStale()) {
+      return read.get();
+    }
+    return (T) reads.execute(key, read::get);
+  }
+
+  /*
+   * readsChanged() method is called for every change. Within a transaction the second step is
+   * registered once, however many rows the transaction changes.
+   */
+
+  public void readsChanged() {
+    reads.forgetAll();
+    responses.invalidateAll();
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()
+        && !TransactionSynchronizationManager.hasResource(reads)) {
+      TransactionSynchronizationManager.bindResource(reads, Boolean.TRUE);
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          TransactionSynchronizationManager.unbindResourceIfPossible(reads);
+          reads.forgetAll();
+          responses.invalidateAll();
+        }
+      });
+    }
+  }
+
+  public Map<String, CacheStats> stats() {
+    return Map.of("site", sites.stats(), "project", projects.stats(), "teamMember",
+        teamMembers.stats(), "response", responses.stats());
+  }
+
+  private boolean readMayBeStale() {
+    return Objects.nonNull(routingDataSource) && routingDataSource.readMayBeStale();
+  }
+
+  private static <T> void coalescedCounter(MeterRegistry meterRegistry, String read, T source,
+      ToDoubleFunction<T> count) {
+    FunctionCounter.builder("site.reads.coalesced", source, count)
+        .description("Reads that were given the result of a concurrent identical read")
+        .tag("read", read).register(meterRegistry);
+  }
+
+  private <V> void invalidate(ExpiringLruCache<Long, V> cache, Long id) {
+    cache.invalidate(id);
+
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          cache.invalidate(id);
+        }
+      });
+    }
+  }
+}
@@ -1,23 +1,53 @@
 package site.service;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import lombok.extern.slf4j.Slf4j;
+import site.cache.CacheStats;
+import site.cache.EncodedBody;
+import site.changes.ChangeFeed;
+import site.controller.model.BatchItemResult;
+import site.controller.model.ChangeEventData;
+import site.controller.model.GroupCount;
 import site.controller.model.ProjectData;
+import site.controller.model.SearchResults;
 import site.controller.model.SiteData;
+import site.controller.model.SiteStats;
 import site.controller.model.TeamMemberData;
 import site.dao.ProjectDao;
+import site.dao.ProjectTeamMemberRow;
 import site.dao.SiteDao;
 import site.dao.TeamMemberDao;
 import site.entity.Project;
 import site.entity.Site;
 import site.entity.TeamMember;
+import site.search.SearchIndex;
 
 @Service
+@Slf4j
 public class SiteService {
 
   /*
@@ -36,20 +66,89 @@ public class SiteService {
   @Autowired
   private TeamMemberDao teamMemberDao;
 
+  @Autowired
+  private SiteDtoCache siteDtoCache;
+
+  @Autowired
+  private SearchIndex searchIndex;
+
+  @Autowired
+  private ChangeFeed changeFeed;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  /*
+   * Upper bound for the number of sites returned by a single call to retrieveSitePage().
+   */
+
+  public static final int MAX_PAGE_SIZE = 1000;
+
+  /*
+   * Fields the project and team member listings can be sorted by.
+   */
+
+  public static final Set<String> PROJECT_SORT_FIELDS =
+      Set.of("projectId", "projectName", "projectType");
+  public static final Set<String> TEAM_MEMBER_SORT_FIELDS =
+      Set.of("teamMemberId", "teamMemberName", "teamMemberRole");
+
+  /*
+   * Upper bound for the number of items in one batch request, and the number of items written per
+   * transaction while a batch is saved.
+   */
+
+  public static final int MAX_BATCH_SIZE = 10000;
+  public static final int BATCH_CHUNK_SIZE = 500;
+
+  /*
+   * Number of sites or projects deleted per transaction by a bulk delete. Smaller than
+   * BATCH_CHUNK_SIZE because every site can take many projects and join rows with it.
+   */
+
+  public static final int DELETE_CHUNK_SIZE = 100;
+
+  /*
+   * Number of times a single-row write is tried when it conflicts with a concurrent write.
+   */
+
+  public static final int MAX_WRITE_ATTEMPTS = 5;
+
+  /*
+   * An import commits once it has buffered this many sites, or this many sites, projects and team
+   * members together, whichever comes first.
+   */
+
+  public static final int IMPORT_CHUNK_SITES = 100;
+  public static final int IMPORT_CHUNK_ROWS = 5000;
+
   // -------------------------------SITE----------------------------------------------------------//
 
   /*
-   * saveSite() method takes SiteData object as a parameter and return new SiteData object.
+   * saveSite() method takes SiteData object as a parameter and return new SiteData object. The
+   * optional ifMatch holds the versions accepted by the If-Match header of an update; the update
+   * fails with VersionMismatchException if the site is at another version. The write is retried
+   * on a conflicting concurrent write, see writeWithRetry().
    */
 
-  @Transactional(readOnly = false)
   public SiteData saveSite(SiteData siteData) {
-    Long siteId = siteData.getSiteId();
-    Site site = findOrCreateSite(siteId);
-    copySiteFields(site, siteData);
+    return saveSite(siteData, null);
+  }
 
-    // returning new SiteData object created from the return value of the save() method.
-    return new SiteData(siteDao.save(site));
+  public SiteData saveSite(SiteData siteData, Set<Long> ifMatch) {
+    return writeWithRetry(() -> {
+      Long siteId = siteData.getSiteId();
+      Site site = findOrCreateSite(siteId);
+      checkVersion(ifMatch, site.getVersion(), "Site", siteId);
+      copySiteFields(site, siteData);
+
+      // returning new SiteData object created from the return value of the save() method.
+      Site dbSite = siteDao.saveAndFlush(site);
+      siteDtoCache.invalidateSite(dbSite.getSiteId());
+      searchIndex.indexSite(dbSite.getSiteId(), dbSite.getSiteName(), dbSite.getSiteAddress());
+      recordChange(ChangeEventData.SITE, dbSite.getSiteId(), operation(siteId));
+      return new SiteData(dbSite);
+    });
   }
 
   /*
@@ -94,48 +193,129 @@ public class SiteService {
   }
 
   /*
-   * retrieveAllSite() method, lists all the sites in the database. This method takes no parameters.
-   * Call is made to findAll() method in the siteDao. List of site object is converted to SiteData
-   * object. Summary list of all sites, all the projects related with each site and all the team
-   * members related to each project is returned.
+   * retrieveSitePage() method, lists one page of sites in siteId order. This method takes the
+   * siteId of the last site the caller has already seen (null for the first page) and the page
+   * size. The page size is clamped between 1 and MAX_PAGE_SIZE so a single request can never pull
+   * the whole table into memory. Each site is converted to SiteData down to the given depth: 0 for
+   * the site alone, 1 with its projects and 2 with their team members as well. Associations below
+   * the depth are not fetched at all. Identical concurrent requests share one read.
    */
 
-  @Transactional(readOnly = true)
-  public List<SiteData> retrieveAllSite() {
-    List<Site> sites = siteDao.findAll();
-    List<SiteData> result = new LinkedList<>();
+  public List<SiteData> retrieveSitePage(Long afterSiteId, int limit, int depth) {
+    Long after = Objects.isNull(afterSiteId) ? 0L : afterSiteId;
+    int pageSize = Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+    int siteDepth = clampDepth(depth, SiteData.FULL_DEPTH);
+
+    return coalesce(Arrays.asList("sitePage", after, pageSize, siteDepth),
+        () -> loadSitePage(after, pageSize, siteDepth));
+  }
+
+  private List<SiteData> loadSitePage(Long after, int pageSize, int siteDepth) {
+    List<Site> sites = siteDao.findBySiteIdGreaterThanOrderBySiteIdAsc(after, Limit.of(pageSize));
+    fetchSiteGraph(sites, siteDepth);
+    List<SiteData> result = new ArrayList<>(sites.size());
 
     for (Site site : sites) {
-      SiteData sd = new SiteData(site);
+      SiteData sd = new SiteData(site, siteDepth);
       result.add(sd);
     }
     return result;
   }
 
+  /*
+   * fetchSiteGraph() method takes a list of sites that are already loaded and initializes their
+   * projects (depth 1 and up) and the team members of those projects (depth 2). This takes at most
+   * two SELECT statements no matter how many sites, projects or team members there are, instead of
+   * one lazy SELECT per site and one per project when SiteData walks the graph.
+   */
+
+  private void fetchSiteGraph(List<Site> sites, int depth) {
+    if (!sites.isEmpty() && depth >= 1) {
+      siteDao.fetchProjects(sites);
+
+      if (depth >= 2) {
+        projectDao.fetchTeamMembersBySites(sites);
+      }
+    }
+  }
+
+  /*
+   * clampDepth() method keeps a requested depth between 0 and the full depth of the DTO.
+   */
+
+  private static int clampDepth(int depth, int fullDepth) {
+    return Math.min(Math.max(depth, 0), fullDepth);
+  }
+
   /*
    * retrieveSiteById() method, lists site associated with a particular site Id. This method takes
-   * in siteId as a parameter, findSiteById() method is called, result is converted to SiteData
-   * object. Summary list of the site associated with the siteId, projects related with the site Id
-   * and the team members related with the projects in the particular site are returned.
+   * in siteId as a parameter and returns the SiteData from the cache. On a cache miss the site,
+   * its projects and their team members are loaded in a read-only transaction and cached. Summary
+   * list of the site associated with the siteId, projects related with the site Id and the team
+   * members related with the projects in the particular site are returned.
+   * 
+   * Only full-depth SiteData is cached. A shallower request is cut down from the cached SiteData
+   * when there is one, otherwise only the site (depth 0) or the site and its projects (depth 1) are
+   * loaded.
+   */
+
+  public SiteData retrieveSiteById(Long siteId, int depth) {
+    int siteDepth = clampDepth(depth, SiteData.FULL_DEPTH);
+
+    if (siteDepth == SiteData.FULL_DEPTH) {
+      return siteDtoCache.getOrLoad(siteDtoCache.sites(), siteId,
+          id -> inTransaction(true, () -> loadSiteData(id, SiteData.FULL_DEPTH)));
+    }
+
+    SiteData cached = siteDtoCache.sites().get(siteId);
+
+    if (Objects.nonNull(cached)) {
+      return cached.toDepth(siteDepth);
+    }
+    return coalesce(Arrays.asList("site", siteId, siteDepth),
+        () -> loadSiteData(siteId, siteDepth));
+  }
+
+  private SiteData loadSiteData(Long siteId, int depth) {
+    Optional<Site> site;
+
+    if (depth == 0) {
+      site = siteDao.findById(siteId);
+    } else if (depth == 1) {
+      site = siteDao.findWithProjectsOnlyBySiteId(siteId);
+    } else {
+      site = siteDao.findWithProjectsBySiteId(siteId);
+    }
+    return new SiteData(site.orElseThrow(
+        () -> new NoSuchElementException("Site with ID=" + siteId + " does not exist")), depth);
+  }
+
+  /*
+   * retrieveSiteVersion() method returns the version of the site associated with the site Id,
+   * without loading the site, its projects or their team members. It is used to answer conditional
+   * GET requests. If no site with the given Id is found, NoSuchElementException is thrown.
    */
 
-  @Transactional(readOnly = true)
-  public SiteData retrieveSiteById(Long siteId) {
-    Site site = findSiteById(siteId);
-    return new SiteData(site);
+  public Long retrieveSiteVersion(Long siteId) {
+    return coalesce(Arrays.asList("siteVersion", siteId),
+        () -> siteDao.findVersionBySiteId(siteId).orElseThrow(
+            () -> new NoSuchElementException("Site with ID=" + siteId + " does not exist")));
   }
 
   /*
-   * deleteSiteById() method, deletes the site associated with the site Id. This methods takes
-   * siteId as a parameter, calls findSiteById() method to retrieve the site entity and calls the
-   * delete() method in the SiteDao interface.
+   * deleteSiteById() method, deletes the site associated with the site Id together with its
+   * projects. This methods takes siteId as a parameter, checks that the site exists and calls
+   * deleteSiteRows(), which deletes the site with a few set-based statements instead of loading it
+   * and letting JPA cascade to every project.
    * 
    */
 
   @Transactional(readOnly = false)
   public void deleteSiteById(Long siteId) {
-    Site site = findSiteById(siteId);
-    siteDao.delete(site);
+    if (!siteDao.existsById(siteId)) {
+      throw new NoSuchElementException("Site with ID=" + siteId + " does not exist");
+    }
+    deleteSiteRows(List.of(siteId));
   }
 
   // ------------------------------------------PROJECT---------------------------------------------------//
@@ -154,21 +334,30 @@ public class SiteService {
    * thrown.
    * 
    * If we try to update a project not associated with the correct siteId, IllegalArgumentException
-   * is thrown.
+   * is thrown. ifMatch is checked against the version of the project as for saveSite().
    * 
    */
 
-  @Transactional(readOnly = false)
-
   public ProjectData saveProject(Long siteId, ProjectData projectData) {
-    Site site = findSiteById(siteId);
-    Project project = findOrCreateProject(projectData.getProjectId(), siteId);
-    copyProjectFields(project, projectData);
-    project.setSite(site);
-    site.getProjects().add(project);
-    Project dbProject = projectDao.save(project);
+    return saveProject(siteId, projectData, null);
+  }
 
-    return new ProjectData(dbProject);
+  public ProjectData saveProject(Long siteId, ProjectData projectData, Set<Long> ifMatch) {
+    return writeWithRetry(() -> {
+      Site site = findSiteById(siteId);
+      Project project = findOrCreateProject(projectData.getProjectId(), siteId);
+      checkVersion(ifMatch, project.getVersion(), "Project", projectData.getProjectId());
+      copyProjectFields(project, projectData);
+      project.setSite(site);
+      site.getProjects().add(project);
+      Project dbProject = projectDao.saveAndFlush(project);
+      projectChanged(dbProject);
+      searchIndex.indexProject(dbProject.getProjectId(), dbProject.getProjectName());
+      recordChange(ChangeEventData.PROJECT, dbProject.getProjectId(),
+          operation(projectData.getProjectId()));
+
+      return new ProjectData(dbProject);
+    });
   }
 
   private Project findOrCreateProject(Long projectId, Long siteId) {
@@ -205,36 +394,81 @@ public class SiteService {
   }
 
   /*
-   * retrieveAllProjects() method, lists all the projects in the database. This method takes no
-   * parameters. Call in made to findAll() method in the projectDao. List of project object is
-   * converted to ProjectData object. Summary list of all projects and all the team members related
-   * with each project returned.
+   * retrieveAllProjects() method, lists the projects in the database. This method takes an
+   * optional project type, an optional site state and the sort order. Null filters match every
+   * project, and projects can be sorted by any field in PROJECT_SORT_FIELDS; ties and unsorted
+   * requests are ordered by project Id. The projects and their team members are read with two
+   * projection queries straight into ProjectData and TeamMemberData, so no entities are loaded into
+   * the persistence context. Summary list of the projects and all the team members related with
+   * each project returned. At depth 0 the team member query is skipped and the projects are
+   * returned without team members.
    */
 
-  @Transactional(readOnly = true)
-  public List<ProjectData> retrieveAllProjects() {
-    List<Project> projectEntities = projectDao.findAll();
-    List<ProjectData> projectNew = new LinkedList<>();
+  public List<ProjectData> retrieveAllProjects(String projectType, String siteState, Sort sort,
+      int depth) {
+    Sort checkedSort = checkSort(sort, PROJECT_SORT_FIELDS, "projectId");
+    int projectDepth = clampDepth(depth, ProjectData.FULL_DEPTH);
+
+    return coalesce(Arrays.asList("projects", projectType, siteState, checkedSort, projectDepth),
+        () -> loadProjects(projectType, siteState, checkedSort, projectDepth));
+  }
+
+  private List<ProjectData> loadProjects(String projectType, String siteState, Sort sort,
+      int depth) {
+    List<ProjectData> projects = projectDao.findProjectData(projectType, siteState, sort);
 
-    for (Project project : projectEntities) {
-      ProjectData projectData = new ProjectData(project);
-      projectNew.add(projectData);
+    if (depth == 0) {
+      projects.forEach(projectData -> projectData.setTeamMembers(null));
+      return projects;
     }
-    return projectNew;
+    Map<Long, ProjectData> projectsById = new HashMap<>();
 
+    for (ProjectData projectData : projects) {
+      projectsById.put(projectData.getProjectId(), projectData);
+    }
+
+    for (ProjectTeamMemberRow row : projectDao.findProjectTeamMemberRows(projectType,
+        siteState)) {
+      ProjectData projectData = projectsById.get(row.projectId());
+
+      if (Objects.nonNull(projectData)) {
+        projectData.getTeamMembers().add(new TeamMemberData(row.teamMemberId(),
+            row.teamMemberRole(), row.teamMemberName(), row.teamMemberPhone(),
+            row.teamMemberVersion()));
+      }
+    }
+    return projects;
   }
 
   /*
    * retrieveProjectById() method, lists project associated with a particular project Id. This
-   * method takes in projectId as a parameter, findProjectById() method is called, result is
-   * converted to ProjectData object. Project associated with the project Id and team members
-   * associate with the give project is returned. If no project with the give Id is found,
-   * NoSuchElementException is thrown.
+   * method takes in projectId as a parameter and returns the ProjectData from the cache. On a cache
+   * miss the project and its team members are loaded in a read-only transaction and cached. Project
+   * associated with the project Id and team members associate with the give project is returned.
+   * If no project with the give Id is found, NoSuchElementException is thrown.
+   * 
+   * At depth 0 the project is cut down from the cached ProjectData when there is one, otherwise
+   * the project is loaded without its team members and nothing is cached.
    */
 
-  @Transactional(readOnly = true)
-  public ProjectData retrieveProjectById(Long projectId) {
-    Project project = findProjectById(projectId);
+  public ProjectData retrieveProjectById(Long projectId, int depth) {
+    if (clampDepth(depth, ProjectData.FULL_DEPTH) == ProjectData.FULL_DEPTH) {
+      return siteDtoCache.getOrLoad(siteDtoCache.projects(), projectId,
+          id -> inTransaction(true, () -> loadProjectData(id)));
+    }
+
+    ProjectData cached = siteDtoCache.projects().get(projectId);
+
+    if (Objects.nonNull(cached)) {
+      return cached.toDepth(0);
+    }
+    return coalesce(Arrays.asList("project", projectId, 0),
+        () -> new ProjectData(findProjectById(projectId), 0));
+  }
+
+  private ProjectData loadProjectData(Long projectId) {
+    Project project = projectDao.findWithTeamMembersByProjectId(projectId).orElseThrow(
+        () -> new NoSuchElementException("Project with ID=" + projectId + " was not found"));
     return new ProjectData(project);
   }
 
@@ -244,17 +478,29 @@ public class SiteService {
 
   }
 
+  /*
+   * retrieveProjectVersion() method returns the version of the project associated with the
+   * project Id, without loading the project or its team members.
+   */
+
+  public Long retrieveProjectVersion(Long projectId) {
+    return coalesce(Arrays.asList("projectVersion", projectId),
+        () -> projectDao.findVersionByProjectId(projectId).orElseThrow(
+            () -> new NoSuchElementException("Project with ID=" + projectId + " was not found")));
+  }
+
   /*
    * deleteProjectById() method, deletes the project associated with the project Id. This methods
-   * takes projectId as a parameter, call findProjectById() method to retrieve the project entity
-   * and calls the delete() method in the ProjectDao interface.
+   * takes projectId as a parameter, checks that the project exists and calls deleteProjectRows().
    * 
    */
 
   @Transactional(readOnly = false)
   public void deleteProjectById(Long projectId) {
-    Project project = findProjectById(projectId);
-    projectDao.delete(project);
+    if (!projectDao.existsById(projectId)) {
+      throw new NoSuchElementException("Project with ID=" + projectId + " was not found");
+    }
+    deleteProjectRows(List.of(projectId));
   }
 
   // --------------------------------------Team_Member-----------------------------------------------------------//
@@ -273,18 +519,33 @@ public class SiteService {
    * teamMemberDao method findById(), teamMember object is returned. If the teamMember isn't found,
    * NoSuchElementException is thrown.
    * 
+   * ifMatch is checked against the version of the team member as for saveSite().
+   * 
    */
 
-  @Transactional(readOnly = false)
   public TeamMemberData saveTeamMember(Long projectId, TeamMemberData teamMemberData) {
-    Project project = findProjectById(projectId);
-    TeamMember teamMember = findOrCreateTeamMember(teamMemberData.getTeamMemberId(), projectId);
-    copyTeamMemberFields(teamMember, teamMemberData);
-    teamMember.getProject().add(project);
-    project.getTeamMembers().add(teamMember);
-    TeamMember dbTeamMember = teamMemberDao.save(teamMember);
+    return saveTeamMember(projectId, teamMemberData, null);
+  }
 
-    return new TeamMemberData(dbTeamMember);
+  public TeamMemberData saveTeamMember(Long projectId, TeamMemberData teamMemberData,
+      Set<Long> ifMatch) {
+    return writeWithRetry(() -> {
+      Long siteId = findSiteIdOfProject(projectId);
+      TeamMember teamMember =
+          findOrCreateTeamMember(teamMemberData.getTeamMemberId(), projectId);
+      checkVersion(ifMatch, teamMember.getVersion(), "Team member",
+          teamMemberData.getTeamMemberId());
+      copyTeamMemberFields(teamMember, teamMemberData);
+      TeamMember dbTeamMember = teamMemberDao.saveAndFlush(teamMember);
+      teamMemberChanged(dbTeamMember);
+      linkTeamMembers(projectId, siteId, List.of(dbTeamMember.getTeamMemberId()));
+      searchIndex.indexTeamMember(dbTeamMember.getTeamMemberId(),
+          dbTeamMember.getTeamMemberName());
+      recordChange(ChangeEventData.TEAM_MEMBER, dbTeamMember.getTeamMemberId(),
+          operation(teamMemberData.getTeamMemberId()));
+
+      return new TeamMemberData(dbTeamMember);
+    });
   }
 
   private TeamMember findOrCreateTeamMember(Long teamMemberId, Long projectId) {
@@ -320,34 +581,50 @@ public class SiteService {
   }
 
   /*
-   * retrieveAllTeamMembers() method, lists all the teamMembers in the database. This method takes
-   * no parameters. Call in made to findAll() method in the teamMemberDao. List of teamMember object
-   * is converted to TeamMemberData object. Summary list of all team members is returned.
+   * retrieveAllTeamMembers() method, lists the teamMembers in the database. This method takes an
+   * optional role and the sort order. A null role matches every team member, and team members can
+   * be sorted by any field in TEAM_MEMBER_SORT_FIELDS; ties and unsorted requests are ordered by
+   * team member Id. The team members are read with a projection query straight into
+   * TeamMemberData, so no entities are loaded into the persistence context. Summary list of the
+   * team members is returned.
    */
 
-  @Transactional(readOnly = true)
-  public List<TeamMemberData> retrieveAllTeamMembers() {
-    List<TeamMember> teamMemberEntities = teamMemberDao.findAll();
-    List<TeamMemberData> teamMemberNew = new LinkedList<>();
+  public List<TeamMemberData> retrieveAllTeamMembers(String teamMemberRole, Sort sort) {
+    Sort checkedSort = checkSort(sort, TEAM_MEMBER_SORT_FIELDS, "teamMemberId");
+
+    return coalesce(Arrays.asList("teamMembers", teamMemberRole, checkedSort),
+        () -> teamMemberDao.findTeamMemberData(teamMemberRole, checkedSort));
+  }
+
+  /*
+   * checkSort() method rejects sorting by fields that are not in the allowed set, and adds the Id
+   * as the last sort key so the order is always the same. Sorting by Id uses the primary key and
+   * sorting by name the single-column name index (idx_project_name, idx_team_member_name). The
+   * composite (type, name) and (role, name) indexes back sorting by type or role, but give the name
+   * order only after an equality filter on type or role.
+   */
 
-    for (TeamMember teamMember : teamMemberEntities) {
-      TeamMemberData teamMemberData = new TeamMemberData(teamMember);
-      teamMemberNew.add(teamMemberData);
+  private static Sort checkSort(Sort sort, Set<String> allowedFields, String idField) {
+    for (Sort.Order order : sort) {
+      if (!allowedFields.contains(order.getProperty())) {
+        throw new IllegalArgumentException("Sorting by " + order.getProperty()
+            + " is not supported. Supported fields are " + allowedFields);
+      }
     }
-    return teamMemberNew;
+    return sort.and(Sort.by(idField));
   }
 
   /*
    * retrieveTeamMemberById() method, lists team member associated with a particular team member Id.
-   * This method takes in teamMemberId as a parameter, findTeamMemberById() method is called, result
-   * is converted to TeamMemberData object. Team member associated with the team member Id is
-   * returned. If no team member with the give Id is found, NoSuchElementException is thrown.
+   * This method takes in teamMemberId as a parameter and returns the TeamMemberData from the cache.
+   * On a cache miss findTeamMemberById() method is called in a read-only transaction and the result
+   * is converted to TeamMemberData object and cached. Team member associated with the team member
+   * Id is returned. If no team member with the give Id is found, NoSuchElementException is thrown.
    */
 
-  @Transactional(readOnly = true)
   public TeamMemberData retrieveTeamMemberById(Long teamMemberId) {
-    TeamMember teamMember = findTeamMemberById(teamMemberId);
-    return new TeamMemberData(teamMember);
+    return siteDtoCache.getOrLoad(siteDtoCache.teamMembers(), teamMemberId,
+        id -> inTransaction(true, () -> new TeamMemberData(findTeamMemberById(id))));
   }
 
   private TeamMember findTeamMemberById(Long teamMemberId) {
@@ -355,20 +632,945 @@ public class SiteService {
         () -> new NoSuchElementException("Team member with ID=" + teamMemberId + " was not found"));
   }
 
+  /*
+   * retrieveTeamMemberVersion() method returns the version of the team member associated with the
+   * team member Id, without loading the team member.
+   */
+
+  public Long retrieveTeamMemberVersion(Long teamMemberId) {
+    return coalesce(Arrays.asList("teamMemberVersion", teamMemberId),
+        () -> teamMemberDao.findVersionByTeamMemberId(teamMemberId)
+            .orElseThrow(() -> new NoSuchElementException(
+                "Team member with ID=" + teamMemberId + " was not found")));
+  }
+
   /*
    * deleteTeamMemberById() method, deletes the team member associated with the team member Id. This
-   * methods takes teamMemberId as a parameter, call findTeamMemberById() method to retrieve the
-   * team member entity and calls the delete() method in the TeamMemberDao interface.
+   * methods takes teamMemberId as a parameter, checks that the team member exists and calls
+   * deleteTeamMemberRows(), which removes it from its projects without loading them.
    * 
    */
 
   @Transactional(readOnly = false)
   public void deleteTeamMemberById(Long teamMemberId) {
-    TeamMember teamMember = findTeamMemberById(teamMemberId);
+    if (!teamMemberDao.existsById(teamMemberId)) {
+      throw new NoSuchElementException("Team member with ID=" + teamMemberId + " was not found");
+    }
+    deleteTeamMemberRows(List.of(teamMemberId));
+  }
+
+  // --------------------------------------Membership----------------------------------------------//
+
+  /*
+   * Methods associated with adding existing team members to a project and removing them from it.
+   * The team members themselves are not changed or deleted.
+   * 
+   * attachTeamMember() and detachTeamMember() methods take the project Id and the team member Id
+   * and return true if the membership was changed, false if the team member already was (or was
+   * not) a member of the project. attachTeamMembers() and detachTeamMembers() methods take a list
+   * of team member Ids and return one BatchItemResult per Id, in request order, with a status of
+   * ATTACHED or DETACHED, UNCHANGED or INVALID. An Id that does not exist or appears more than once
+   * is INVALID. The whole list is written in one transaction with a single statement.
+   */
+
+  public boolean attachTeamMember(Long projectId, Long teamMemberId) {
+    return changeMembership(projectId, teamMemberId, true);
+  }
+
+  public boolean detachTeamMember(Long projectId, Long teamMemberId) {
+    return changeMembership(projectId, teamMemberId, false);
+  }
+
+  public List<BatchItemResult> attachTeamMembers(Long projectId, List<Long> teamMemberIds) {
+    return changeMemberships(projectId, teamMemberIds, true);
+  }
+
+  public List<BatchItemResult> detachTeamMembers(Long projectId, List<Long> teamMemberIds) {
+    return changeMemberships(projectId, teamMemberIds, false);
+  }
+
+  private boolean changeMembership(Long projectId, Long teamMemberId, boolean attach) {
+    return inTransaction(false, () -> {
+      Long siteId = findSiteIdOfProject(projectId);
+
+      if (!teamMemberDao.existsById(teamMemberId)) {
+        throw new NoSuchElementException(
+            "Team member with ID=" + teamMemberId + " was not found");
+      }
+
+      List<Long> teamMemberIds = List.of(teamMemberId);
+      return (attach ? linkTeamMembers(projectId, siteId, teamMemberIds)
+          : unlinkTeamMembers(projectId, siteId, teamMemberIds)) > 0;
+    });
+  }
+
+  private List<BatchItemResult> changeMemberships(Long projectId, List<Long> teamMemberIds,
+      boolean attach) {
+    if (Objects.isNull(teamMemberIds) || teamMemberIds.isEmpty()
+        || teamMemberIds.size() > MAX_BATCH_SIZE) {
+      throw new IllegalArgumentException(
+          "A batch must contain between 1 and " + MAX_BATCH_SIZE + " items");
+    }
+
+    return inTransaction(false, () -> {
+      Long siteId = findSiteIdOfProject(projectId);
+      List<Long> requestedIds = idsOf(teamMemberIds, Function.identity());
+      Set<Long> existingIds = new HashSet<>();
+      Set<Long> linkedIds = new HashSet<>();
+
+      if (!requestedIds.isEmpty()) {
+        existingIds.addAll(teamMemberDao.findExistingTeamMemberIds(requestedIds));
+        linkedIds.addAll(projectDao.findLinkedTeamMemberIds(projectId, requestedIds));
+      }
+
+      Set<Long> seenIds = new HashSet<>();
+      List<Long> changedIds = new ArrayList<>(teamMemberIds.size());
+      List<BatchItemResult> results = new ArrayList<>(teamMemberIds.size());
+
+      for (int index = 0; index < teamMemberIds.size(); index++) {
+        Long id = teamMemberIds.get(index);
+
+        if (Objects.isNull(id)) {
+          results.add(new BatchItemResult(index, id, BatchItemResult.INVALID, "Item is empty"));
+        } else if (!existingIds.contains(id)) {
+          results.add(new BatchItemResult(index, id, BatchItemResult.INVALID,
+              "ID=" + id + " does not exist"));
+        } else if (!seenIds.add(id)) {
+          results.add(new BatchItemResult(index, id, BatchItemResult.INVALID,
+              "ID=" + id + " appears more than once in the batch"));
+        } else if (linkedIds.contains(id) == attach) {
+          results.add(new BatchItemResult(index, id, BatchItemResult.UNCHANGED, null));
+        } else {
+          changedIds.add(id);
+          results.add(new BatchItemResult(index, id,
+              attach ? BatchItemResult.ATTACHED : BatchItemResult.DETACHED, null));
+        }
+      }
+
+      if (!changedIds.isEmpty()) {
+        if (attach) {
+          linkTeamMembers(projectId, siteId, changedIds);
+        } else {
+          unlinkTeamMembers(projectId, siteId, changedIds);
+        }
+      }
+      return results;
+    });
+  }
+
+  /*
+   * linkTeamMembers() and unlinkTeamMembers() methods insert or delete the project_team_member rows
+   * of one project with a single statement and, when a row was written, do for the project what
+   * projectChanged() does for a site: ProjectData and SiteData embed the team members, so the
+   * cached DTOs of the project and its site are dropped, their versions are incremented and both
+   * get an UPDATED event. Team members do not embed their projects, so their DTOs stay as they are.
+   */
+
+  private int linkTeamMembers(Long projectId, Long siteId, List<Long> teamMemberIds) {
+    int linked = projectDao.linkTeamMembers(projectId, teamMemberIds);
+
+    if (linked > 0) {
+      membershipChanged(projectId, siteId);
+    }
+    return linked;
+  }
+
+  private int unlinkTeamMembers(Long projectId, Long siteId, List<Long> teamMemberIds) {
+    int unlinked = projectDao.unlinkTeamMembers(projectId, teamMemberIds);
+
+    if (unlinked > 0) {
+      membershipChanged(projectId, siteId);
+    }
+    return unlinked;
+  }
+
+  private void membershipChanged(Long projectId, Long siteId) {
+    siteDtoCache.invalidateProject(projectId);
+    siteDtoCache.invalidateSite(siteId);
+    pendingVersions().projectIds().add(projectId);
+    pendingVersions().siteIds().add(siteId);
+    recordChange(ChangeEventData.PROJECT, projectId, ChangeEventData.UPDATED);
+    recordChange(ChangeEventData.SITE, siteId, ChangeEventData.UPDATED);
+  }
+
+  /*
+   * findSiteIdOfProject() method returns the site Id of the project, which also checks that the
+   * project exists, without loading the project.
+   */
+
+  private Long findSiteIdOfProject(Long projectId) {
+    return projectDao.findSiteIdByProjectId(projectId).orElseThrow(
+        () -> new NoSuchElementException("Project with ID=" + projectId + " was not found"));
+  }
+
+  // --------------------------------------Change tracking------------------------------------------//
+
+  /*
+   * projectChanged() and teamMemberChanged() methods are called whenever a project or a team member
+   * is saved or deleted.
+   * 
+   * ProjectData embeds the team members and SiteData embeds the projects and their team members, so
+   * a change has to reach every DTO that embeds the changed row. These methods drop the cached DTOs
+   * of the changed row and of every project and site that embeds it, and increment the version of
+   * those projects and sites so their ETags change too. A team member is embedded by every project
+   * it belongs to and by the sites of those projects. Those projects and sites also get an UPDATED
+   * event in the change feed, since what GET returns for them has changed.
+   */
+
+  private void projectChanged(Project project) {
+    siteDtoCache.invalidateProject(project.getProjectId());
+    siteDtoCache.invalidateSite(project.getSite().getSiteId());
+    incrementVersion(project.getSite());
+    recordChange(ChangeEventData.SITE, project.getSite().getSiteId(),
+        ChangeEventData.UPDATED);
+  }
+
+  private void teamMemberChanged(TeamMember teamMember) {
+    siteDtoCache.invalidateTeamMember(teamMember.getTeamMemberId());
+
     for (Project project : teamMember.getProject()) {
-      project.getTeamMembers().remove(teamMember);
+      siteDtoCache.invalidateProject(project.getProjectId());
+      siteDtoCache.invalidateSite(project.getSite().getSiteId());
+      incrementVersion(project);
+      incrementVersion(project.getSite());
+      recordChange(ChangeEventData.PROJECT, project.getProjectId(), ChangeEventData.UPDATED);
+      recordChange(ChangeEventData.SITE, project.getSite().getSiteId(),
+          ChangeEventData.UPDATED);
+    }
+  }
+
+  /*
+   * recordChange() method adds a change to the change feed and detaches the coalesced reads that
+   * are running, so a read that starts after the commit cannot be given data from before it.
+   */
+
+  private void recordChange(String entityType, Long entityId, String operation) {
+    changeFeed.record(entityType, entityId, operation);
+    siteDtoCache.readsChanged();
+  }
+
+  /*
+   * operation() method returns the change feed operation of a save: an item sent without an Id is
+   * created, one sent with an Id is updated.
+   */
+
+  private static String operation(Long requestedId) {
+    return Objects.isNull(requestedId) ? ChangeEventData.CREATED : ChangeEventData.UPDATED;
+  }
+
+  /*
+   * checkVersion() method throws VersionMismatchException when the caller sent If-Match (ifMatch is
+   * not null) and none of its versions is the current version of the row.
+   */
+
+  private static void checkVersion(Set<Long> ifMatch, Long version, String what, Long id) {
+    if (Objects.nonNull(ifMatch) && !ifMatch.contains(version)) {
+      throw new VersionMismatchException(
+          what + " with ID=" + id + " is at version " + version + ", not " + ifMatch);
+    }
+  }
+
+  /*
+   * writeWithRetry() method runs a single-row write in its own transaction. Nothing is locked while
+   * the request is handled: Hibernate checks the versions of the rows it updates when the
+   * transaction flushes and commits, so of two writers that loaded the same version only the first
+   * can commit. The other gets an optimistic locking failure, which usually comes from a version
+   * bump of a shared parent (two projects of one site saved at once) rather than an edit of the
+   * same row. The write is then run again on fresh data, up to MAX_WRITE_ATTEMPTS times with a short
+   * random pause in between; If-Match is checked again on every attempt, so an update made against
+   * a version that has really changed ends in 412 instead. If every attempt conflicts, the
+   * failure is answered with 409 Conflict.
+   */
+
+  private <T> T writeWithRetry(Supplier<T> write) {
+    for (int attempt = 1;; attempt++) {
+      try {
+        return inTransaction(false, write);
+      } catch (OptimisticLockingFailureException e) {
+        if (attempt >= MAX_WRITE_ATTEMPTS) {
+          throw e;
+        }
+        log.debug("Write conflict on attempt {}, retrying: {}", attempt, e.getMessage());
+
+        try {
+          Thread.sleep(ThreadLocalRandom.current().nextLong(1, 1 + (5L << attempt)));
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          throw e;
+        }
+      }
+    }
+  }
+
+  /*
+   * incrementVersion() methods increment the version of a site or project that embeds a changed
+   * row, once per transaction however often it is called. The Ids are collected and incremented
+   * just before the transaction commits with one "version = version + 1" UPDATE per table. Unlike a
+   * forced increment of the loaded entity, that UPDATE does not compare the version, so writers
+   * that only touch different children of the same site do not conflict with each other; they
+   * only hold the row lock from the UPDATE to the commit.
+   */
+
+  private void incrementVersion(Site site) {
+    pendingVersions().siteIds().add(site.getSiteId());
+  }
+
+  private void incrementVersion(Project project) {
+    pendingVersions().projectIds().add(project.getProjectId());
+  }
+
+  private PendingVersions pendingVersions() {
+    PendingVersions pending =
+        (PendingVersions) TransactionSynchronizationManager.getResource(PendingVersions.class);
+
+    if (Objects.nonNull(pending)) {
+      return pending;
+    }
+
+    PendingVersions newPending = new PendingVersions(new HashSet<>(), new HashSet<>());
+    TransactionSynchronizationManager.bindResource(PendingVersions.class, newPending);
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void beforeCommit(boolean readOnly) {
+        if (!newPending.siteIds().isEmpty()) {
+          siteDao.incrementVersions(newPending.siteIds());
+        }
+        if (!newPending.projectIds().isEmpty()) {
+          projectDao.incrementVersions(newPending.projectIds());
+        }
+      }
+
+      @Override
+      public void afterCompletion(int status) {
+        TransactionSynchronizationManager.unbindResourceIfPossible(PendingVersions.class);
+      }
+    });
+    return newPending;
+  }
+
+  private record PendingVersions(Set<Long> siteIds, Set<Long> projectIds) {
+  }
+
+  // --------------------------------------Batch---------------------------------------------------//
+
+  /*
+   * Methods associated with adding/updating many rows in one request.
+   * 
+   * saveSites(), saveProjects() and saveTeamMembers() methods take a list of DTOs and return one
+   * BatchItemResult per item, in request order. Items without an Id are created and items with an
+   * Id are updated.
+   * 
+   * The whole batch is validated before anything is written: the name is required, an Id may only
+   * appear once, and every Id must already exist (for projects, in the given site). Invalid items
+   * are reported as INVALID and skipped. The valid items are written in chunks of BATCH_CHUNK_SIZE,
+   * each chunk in its own transaction, so the INSERT and UPDATE statements of a chunk are sent to
+   * the database as JDBC batches. If a chunk fails, every item in that chunk is reported as FAILED
+   * and the other chunks are still written.
+   */
+
+  public List<BatchItemResult> saveSites(List<SiteData> sites) {
+    return saveBatch(sites, SiteData::getSiteId, siteDao::findExistingSiteIds,
+        siteData -> isBlank(siteData.getSiteName()) ? "siteName is required" : null, chunk -> {
+          Map<Long, Site> existing = new HashMap<>();
+
+          for (Site site : siteDao.findAllById(idsOf(chunk, SiteData::getSiteId))) {
+            existing.put(site.getSiteId(), site);
+          }
+
+          List<Site> sitesToSave = new ArrayList<>(chunk.size());
+
+          for (SiteData siteData : chunk) {
+            Site site = Objects.isNull(siteData.getSiteId()) ? new Site()
+                : existing.get(siteData.getSiteId());
+            copySiteFields(site, siteData);
+            sitesToSave.add(site);
+          }
+
+          List<Long> ids = new ArrayList<>(chunk.size());
+
+          for (Site site : siteDao.saveAll(sitesToSave)) {
+            siteDtoCache.invalidateSite(site.getSiteId());
+            searchIndex.indexSite(site.getSiteId(), site.getSiteName(), site.getSiteAddress());
+            recordChange(ChangeEventData.SITE, site.getSiteId(),
+                existing.containsKey(site.getSiteId()) ? ChangeEventData.UPDATED
+                    : ChangeEventData.CREATED);
+            ids.add(site.getSiteId());
+          }
+          return ids;
+        });
+  }
+
+  public List<BatchItemResult> saveProjects(Long siteId, List<ProjectData> projects) {
+    findSiteById(siteId);
+
+    return saveBatch(projects, ProjectData::getProjectId,
+        projectIds -> projectDao.findExistingProjectIds(siteId, projectIds),
+        projectData -> isBlank(projectData.getProjectName()) ? "projectName is required" : null,
+        chunk -> {
+          Site site = findSiteById(siteId);
+          Map<Long, Project> existing = new HashMap<>();
+
+          for (Project project : projectDao.findAllById(idsOf(chunk, ProjectData::getProjectId))) {
+            existing.put(project.getProjectId(), project);
+          }
+
+          List<Project> projectsToSave = new ArrayList<>(chunk.size());
+
+          for (ProjectData projectData : chunk) {
+            Project project = Objects.isNull(projectData.getProjectId()) ? new Project()
+                : existing.get(projectData.getProjectId());
+            copyProjectFields(project, projectData);
+            project.setSite(site);
+            projectsToSave.add(project);
+          }
+
+          List<Long> ids = new ArrayList<>(chunk.size());
+
+          for (Project project : projectDao.saveAll(projectsToSave)) {
+            projectChanged(project);
+            searchIndex.indexProject(project.getProjectId(), project.getProjectName());
+            recordChange(ChangeEventData.PROJECT, project.getProjectId(),
+                existing.containsKey(project.getProjectId()) ? ChangeEventData.UPDATED
+                    : ChangeEventData.CREATED);
+            ids.add(project.getProjectId());
+          }
+          return ids;
+        });
+  }
+
+  public List<BatchItemResult> saveTeamMembers(Long projectId,
+      List<TeamMemberData> teamMembers) {
+    findSiteIdOfProject(projectId);
+
+    return saveBatch(teamMembers, TeamMemberData::getTeamMemberId,
+        teamMemberDao::findExistingTeamMemberIds,
+        teamMemberData -> isBlank(teamMemberData.getTeamMemberName())
+            ? "teamMemberName is required"
+            : null,
+        chunk -> {
+          Long siteId = findSiteIdOfProject(projectId);
+          Map<Long, TeamMember> existing = new HashMap<>();
+
+          for (TeamMember teamMember : teamMemberDao
+              .findAllById(idsOf(chunk, TeamMemberData::getTeamMemberId))) {
+            existing.put(teamMember.getTeamMemberId(), teamMember);
+          }
+
+          List<TeamMember> teamMembersToSave = new ArrayList<>(chunk.size());
+
+          for (TeamMemberData teamMemberData : chunk) {
+            TeamMember teamMember = Objects.isNull(teamMemberData.getTeamMemberId())
+                ? new TeamMember()
+                : existing.get(teamMemberData.getTeamMemberId());
+            copyTeamMemberFields(teamMember, teamMemberData);
+            teamMembersToSave.add(teamMember);
+          }
+
+          List<Long> ids = new ArrayList<>(chunk.size());
+
+          for (TeamMember teamMember : teamMemberDao.saveAll(teamMembersToSave)) {
+            teamMemberChanged(teamMember);
+            searchIndex.indexTeamMember(teamMember.getTeamMemberId(),
+                teamMember.getTeamMemberName());
+            recordChange(ChangeEventData.TEAM_MEMBER, teamMember.getTeamMemberId(),
+                existing.containsKey(teamMember.getTeamMemberId()) ? ChangeEventData.UPDATED
+                    : ChangeEventData.CREATED);
+            ids.add(teamMember.getTeamMemberId());
+          }
+          linkTeamMembers(projectId, siteId, ids);
+          return ids;
+        });
+  }
+
+  /*
+   * saveBatch() method validates every item of the batch and writes the valid items in chunks.
+   * The chunkWriter is called inside a transaction with one chunk of valid items and returns the
+   * Ids of the saved rows in the same order.
+   */
+
+  private <T> List<BatchItemResult> saveBatch(List<T> items, Function<T, Long> idOf,
+      Function<List<Long>, List<Long>> existingIdsFinder, Function<T, String> validator,
+      Function<List<T>, List<Long>> chunkWriter) {
+    if (Objects.isNull(items) || items.isEmpty() || items.size() > MAX_BATCH_SIZE) {
+      throw new IllegalArgumentException(
+          "A batch must contain between 1 and " + MAX_BATCH_SIZE + " items");
+    }
+
+    List<Long> requestedIds = idsOf(items, idOf);
+    Set<Long> existingIds = requestedIds.isEmpty() ? Set.of()
+        : new HashSet<>(existingIdsFinder.apply(requestedIds));
+    Set<Long> seenIds = new HashSet<>();
+
+    BatchItemResult[] results = new BatchItemResult[items.size()];
+    List<T> validItems = new ArrayList<>(items.size());
+    List<Integer> validIndexes = new ArrayList<>(items.size());
+
+    for (int index = 0; index < items.size(); index++) {
+      T item = items.get(index);
+      Long id = Objects.isNull(item) ? null : idOf.apply(item);
+      String problem;
+
+      if (Objects.isNull(item)) {
+        problem = "Item is empty";
+      } else if (Objects.nonNull(id) && !existingIds.contains(id)) {
+        problem = "ID=" + id + " does not exist";
+      } else if (Objects.nonNull(id) && !seenIds.add(id)) {
+        problem = "ID=" + id + " appears more than once in the batch";
+      } else {
+        problem = validator.apply(item);
+      }
+
+      if (Objects.nonNull(problem)) {
+        results[index] = new BatchItemResult(index, id, BatchItemResult.INVALID, problem);
+      } else {
+        validItems.add(item);
+        validIndexes.add(index);
+      }
+    }
+
+    for (int start = 0; start < validItems.size(); start += BATCH_CHUNK_SIZE) {
+      int end = Math.min(start + BATCH_CHUNK_SIZE, validItems.size());
+      List<T> chunk = validItems.subList(start, end);
+      List<Integer> chunkIndexes = validIndexes.subList(start, end);
+
+      try {
+        List<Long> ids = inTransaction(false, () -> chunkWriter.apply(chunk));
+
+        for (int i = 0; i < chunk.size(); i++) {
+          String status = Objects.isNull(idOf.apply(chunk.get(i))) ? BatchItemResult.CREATED
+              : BatchItemResult.UPDATED;
+          results[chunkIndexes.get(i)] =
+              new BatchItemResult(chunkIndexes.get(i), ids.get(i), status, null);
+        }
+      } catch (RuntimeException e) {
+        for (int i = 0; i < chunk.size(); i++) {
+          results[chunkIndexes.get(i)] = new BatchItemResult(chunkIndexes.get(i),
+              idOf.apply(chunk.get(i)), BatchItemResult.FAILED, e.getMessage());
+        }
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  private static <T> List<Long> idsOf(List<T> items, Function<T, Long> idOf) {
+    List<Long> ids = new ArrayList<>();
+
+    for (T item : items) {
+      if (Objects.nonNull(item) && Objects.nonNull(idOf.apply(item))) {
+        ids.add(idOf.apply(item));
+      }
+    }
+    return ids;
+  }
+
+  private static boolean isBlank(String value) {
+    return Objects.isNull(value) || value.isBlank();
+  }
+
+  // --------------------------------------Bulk delete---------------------------------------------//
+
+  /*
+   * deleteSites() and deleteProjects() methods take a list of Ids and return one BatchItemResult
+   * per Id, in request order, with a status of DELETED, INVALID or FAILED. An Id that does not
+   * exist or appears more than once is INVALID. The valid Ids are deleted in chunks of
+   * DELETE_CHUNK_SIZE, each chunk in its own transaction, so a large delete never holds its locks
+   * for long. If a chunk fails, every Id in that chunk is reported as FAILED and the other chunks
+   * are still deleted.
+   */
+
+  public List<BatchItemResult> deleteSites(List<Long> siteIds) {
+    return deleteBatch(siteIds, siteDao::findExistingSiteIds, this::deleteSiteRows);
+  }
+
+  public List<BatchItemResult> deleteProjects(List<Long> projectIds) {
+    return deleteBatch(projectIds, projectDao::findExistingProjectIds, this::deleteProjectRows);
+  }
+
+  private List<BatchItemResult> deleteBatch(List<Long> ids,
+      Function<List<Long>, List<Long>> existingIdsFinder, Consumer<List<Long>> chunkDeleter) {
+    if (Objects.isNull(ids) || ids.isEmpty() || ids.size() > MAX_BATCH_SIZE) {
+      throw new IllegalArgumentException(
+          "A batch must contain between 1 and " + MAX_BATCH_SIZE + " items");
+    }
+
+    List<Long> requestedIds = idsOf(ids, Function.identity());
+    Set<Long> existingIds = requestedIds.isEmpty() ? Set.of()
+        : new HashSet<>(existingIdsFinder.apply(requestedIds));
+    Set<Long> seenIds = new HashSet<>();
+
+    BatchItemResult[] results = new BatchItemResult[ids.size()];
+    List<Long> validIds = new ArrayList<>(ids.size());
+    List<Integer> validIndexes = new ArrayList<>(ids.size());
+
+    for (int index = 0; index < ids.size(); index++) {
+      Long id = ids.get(index);
+      String problem = null;
+
+      if (Objects.isNull(id)) {
+        problem = "Item is empty";
+      } else if (!existingIds.contains(id)) {
+        problem = "ID=" + id + " does not exist";
+      } else if (!seenIds.add(id)) {
+        problem = "ID=" + id + " appears more than once in the batch";
+      }
+
+      if (Objects.nonNull(problem)) {
+        results[index] = new BatchItemResult(index, id, BatchItemResult.INVALID, problem);
+      } else {
+        validIds.add(id);
+        validIndexes.add(index);
+      }
+    }
+
+    for (int start = 0; start < validIds.size(); start += DELETE_CHUNK_SIZE) {
+      int end = Math.min(start + DELETE_CHUNK_SIZE, validIds.size());
+      List<Long> chunk = validIds.subList(start, end);
+      List<Integer> chunkIndexes = validIndexes.subList(start, end);
+      String status = BatchItemResult.DELETED;
+      String message = null;
+
+      try {
+        inTransaction(false, () -> {
+          chunkDeleter.accept(chunk);
+          return null;
+        });
+      } catch (RuntimeException e) {
+        status = BatchItemResult.FAILED;
+        message = e.getMessage();
+      }
+
+      for (int i = 0; i < chunk.size(); i++) {
+        results[chunkIndexes.get(i)] =
+            new BatchItemResult(chunkIndexes.get(i), chunk.get(i), status, message);
+      }
+    }
+    return Arrays.asList(results);
+  }
+
+  /*
+   * deleteSiteRows(), deleteProjectRows() and deleteTeamMemberRows() methods delete existing rows
+   * with a fixed number of set-based statements, however many projects and team members are
+   * involved: first the project_team_member rows, then the projects, then the sites or team
+   * members. Nothing is loaded into the persistence context; the Ids needed for the caches, the
+   * search index and the change feed are read with projection queries first.
+   * 
+   * A site takes its projects with it, as the cascade on Site.projects did. Deleting projects or
+   * team members changes what GET returns for the sites and projects that embedded them, so their
+   * versions are incremented and they get an UPDATED event, as projectChanged() and
+   * teamMemberChanged() do for a single row. Team members are shared between projects and are
+   * never deleted along with a project or site.
+   */
+
+  private void deleteSiteRows(List<Long> siteIds) {
+    List<Long> projectIds = projectDao.findProjectIdsBySiteIds(siteIds);
+
+    projectDao.deleteTeamMemberLinksBySiteIds(siteIds);
+    projectDao.deleteProjectsBySiteIds(siteIds);
+    siteDao.deleteSites(siteIds);
+
+    for (Long projectId : projectIds) {
+      siteDtoCache.invalidateProject(projectId);
+      searchIndex.removeProject(projectId);
+      recordChange(ChangeEventData.PROJECT, projectId, ChangeEventData.DELETED);
+    }
+
+    for (Long siteId : siteIds) {
+      siteDtoCache.invalidateSite(siteId);
+      searchIndex.removeSite(siteId);
+      recordChange(ChangeEventData.SITE, siteId, ChangeEventData.DELETED);
+    }
+  }
+
+  private void deleteProjectRows(List<Long> projectIds) {
+    List<Long> siteIds = projectDao.findSiteIdsByProjectIds(projectIds);
+
+    if (!siteIds.isEmpty()) {
+      siteDao.incrementVersions(siteIds);
+    }
+    projectDao.deleteTeamMemberLinks(projectIds);
+    projectDao.deleteProjects(projectIds);
+
+    for (Long projectId : projectIds) {
+      siteDtoCache.invalidateProject(projectId);
+      searchIndex.removeProject(projectId);
+      recordChange(ChangeEventData.PROJECT, projectId, ChangeEventData.DELETED);
     }
-    teamMemberDao.delete(teamMember);
+
+    for (Long siteId : siteIds) {
+      siteDtoCache.invalidateSite(siteId);
+      recordChange(ChangeEventData.SITE, siteId, ChangeEventData.UPDATED);
+    }
+  }
+
+  private void deleteTeamMemberRows(List<Long> teamMemberIds) {
+    List<Long> projectIds = projectDao.findProjectIdsByTeamMemberIds(teamMemberIds);
+    List<Long> siteIds =
+        projectIds.isEmpty() ? List.of() : projectDao.findSiteIdsByProjectIds(projectIds);
+
+    if (!projectIds.isEmpty()) {
+      projectDao.incrementVersions(projectIds);
+    }
+    if (!siteIds.isEmpty()) {
+      siteDao.incrementVersions(siteIds);
+    }
+    teamMemberDao.deleteProjectLinks(teamMemberIds);
+    teamMemberDao.deleteTeamMembers(teamMemberIds);
+
+    for (Long teamMemberId : teamMemberIds) {
+      siteDtoCache.invalidateTeamMember(teamMemberId);
+      searchIndex.removeTeamMember(teamMemberId);
+      recordChange(ChangeEventData.TEAM_MEMBER, teamMemberId, ChangeEventData.DELETED);
+    }
+
+    for (Long projectId : projectIds) {
+      siteDtoCache.invalidateProject(projectId);
+      recordChange(ChangeEventData.PROJECT, projectId, ChangeEventData.UPDATED);
+    }
+
+    for (Long siteId : siteIds) {
+      siteDtoCache.invalidateSite(siteId);
+      recordChange(ChangeEventData.SITE, siteId, ChangeEventData.UPDATED);
+    }
+  }
+
+  // --------------------------------------Import--------------------------------------------------//
+
+  /*
+   * importSites() method takes an iterator of SiteData objects, such as the lines of an NDJSON
+   * export, and creates a new site for each one together with its projects and team members. The
+   * Ids in the input are only used to recognize the same team member in several projects; new Ids
+   * are generated for everything that is written.
+   * 
+   * The iterator is read one site at a time and the sites are committed in bounded chunks (see
+   * IMPORT_CHUNK_SITES and IMPORT_CHUNK_ROWS), so the input never has to fit in memory. A team
+   * member that appears in several projects, in the same chunk or in a later one, is created once
+   * and linked to every project. Chunks committed before a failure stay committed. A line that
+   * leaves out its projects or team members, or sets them to null, has none. This method returns
+   * the number of sites, projects and team members created.
+   */
+
+  public Map<String, Long> importSites(Iterator<SiteData> sites) {
+    Map<Long, Long> importedTeamMemberIds = new HashMap<>();
+    List<SiteData> chunk = new ArrayList<>();
+    ImportCounts counts = new ImportCounts();
+    int chunkRows = 0;
+
+    while (sites.hasNext()) {
+      SiteData siteData = sites.next();
+      chunk.add(siteData);
+      chunkRows += 1 + orEmpty(siteData.getProjects()).size();
+
+      for (ProjectData projectData : orEmpty(siteData.getProjects())) {
+        chunkRows += orEmpty(projectData.getTeamMembers()).size();
+      }
+
+      if (chunk.size() >= IMPORT_CHUNK_SITES || chunkRows >= IMPORT_CHUNK_ROWS) {
+        importChunk(chunk, importedTeamMemberIds, counts);
+        chunk.clear();
+        chunkRows = 0;
+      }
+    }
+
+    if (!chunk.isEmpty()) {
+      importChunk(chunk, importedTeamMemberIds, counts);
+    }
+    return Map.of("sites", counts.sites, "projects", counts.projects, "teamMembers",
+        counts.teamMembers);
+  }
+
+  /*
+   * importChunk() method writes one chunk of imported sites in a single transaction. Team members
+   * created by an earlier chunk are linked through a reference, without loading them, and team
+   * members created by this chunk are added to importedTeamMemberIds once their Id is known.
+   */
+
+  private void importChunk(List<SiteData> chunk, Map<Long, Long> importedTeamMemberIds,
+      ImportCounts counts) {
+    inTransaction(false, () -> {
+      Map<Long, TeamMember> chunkTeamMembers = new HashMap<>();
+      List<TeamMember> createdTeamMembers = new ArrayList<>();
+      List<Site> sitesToSave = new ArrayList<>(chunk.size());
+
+      for (SiteData siteData : chunk) {
+        Site site = new Site();
+        copySiteFields(site, siteData);
+        site.setSiteId(null);
+
+        for (ProjectData projectData : orEmpty(siteData.getProjects())) {
+          Project project = new Project();
+          copyProjectFields(project, projectData);
+          project.setSite(site);
+          site.getProjects().add(project);
+
+          for (TeamMemberData teamMemberData : orEmpty(projectData.getTeamMembers())) {
+            TeamMember teamMember = findOrCreateImportedTeamMember(teamMemberData,
+                chunkTeamMembers, createdTeamMembers, importedTeamMemberIds, counts);
+            project.getTeamMembers().add(teamMember);
+          }
+          counts.projects++;
+        }
+        sitesToSave.add(site);
+        counts.sites++;
+      }
+
+      siteDao.saveAll(sitesToSave);
+      publishImported(sitesToSave, createdTeamMembers);
+
+      for (Map.Entry<Long, TeamMember> entry : chunkTeamMembers.entrySet()) {
+        importedTeamMemberIds.put(entry.getKey(), entry.getValue().getTeamMemberId());
+      }
+      return null;
+    });
+  }
+
+  private static <T> Set<T> orEmpty(Set<T> values) {
+    return Objects.isNull(values) ? Set.of() : values;
+  }
+
+  private TeamMember findOrCreateImportedTeamMember(TeamMemberData teamMemberData,
+      Map<Long, TeamMember> chunkTeamMembers, List<TeamMember> createdTeamMembers,
+      Map<Long, Long> importedTeamMemberIds, ImportCounts counts) {
+    Long sourceId = teamMemberData.getTeamMemberId();
+
+    if (Objects.nonNull(sourceId) && importedTeamMemberIds.containsKey(sourceId)) {
+      return teamMemberDao.getReferenceById(importedTeamMemberIds.get(sourceId));
+    }
+
+    if (Objects.nonNull(sourceId) && chunkTeamMembers.containsKey(sourceId)) {
+      return chunkTeamMembers.get(sourceId);
+    }
+
+    TeamMember teamMember = new TeamMember();
+    copyTeamMemberFields(teamMember, teamMemberData);
+    teamMember.setTeamMemberId(null);
+    createdTeamMembers.add(teamMember);
+    counts.teamMembers++;
+
+    if (Objects.nonNull(sourceId)) {
+      chunkTeamMembers.put(sourceId, teamMember);
+    }
+    return teamMember;
+  }
+
+  /*
+   * publishImported() method adds the sites, projects and team members created by one import chunk
+   * to the search index and records a CREATED change for each of them. Team members linked from an
+   * earlier chunk were published with that chunk.
+   */
+
+  private void publishImported(List<Site> sites, List<TeamMember> createdTeamMembers) {
+    for (Site site : sites) {
+      searchIndex.indexSite(site.getSiteId(), site.getSiteName(), site.getSiteAddress());
+      recordChange(ChangeEventData.SITE, site.getSiteId(), ChangeEventData.CREATED);
+
+      for (Project project : site.getProjects()) {
+        searchIndex.indexProject(project.getProjectId(), project.getProjectName());
+        recordChange(ChangeEventData.PROJECT, project.getProjectId(),
+            ChangeEventData.CREATED);
+      }
+    }
+
+    for (TeamMember teamMember : createdTeamMembers) {
+      searchIndex.indexTeamMember(teamMember.getTeamMemberId(), teamMember.getTeamMemberName());
+      recordChange(ChangeEventData.TEAM_MEMBER, teamMember.getTeamMemberId(),
+          ChangeEventData.CREATED);
+    }
+  }
+
+  private static class ImportCounts {
+    private long sites;
+    private long projects;
+    private long teamMembers;
+  }
+
+  // --------------------------------------Statistics----------------------------------------------//
+
+  /*
+   * retrieveStats() method returns the row counts of the three tables and the number of projects
+   * of each type and team members in each role. Every figure is counted by the database, so the
+   * cost grows with the number of groups returned rather than the rows read into the application.
+   */
+
+  public SiteStats retrieveStats() {
+    return coalesce(Arrays.asList("stats"),
+        () -> new SiteStats(siteDao.count(), projectDao.count(), teamMemberDao.count(),
+            projectDao.countProjectsByType(), teamMemberDao.countTeamMembersByRole()));
+  }
+
+  /*
+   * retrieveProjectsPerSite() method returns the number of projects of every site, in siteId
+   * order.
+   */
+
+  public List<GroupCount> retrieveProjectsPerSite() {
+    return coalesce(Arrays.asList("projectsPerSite"), siteDao::countProjectsPerSite);
+  }
+
+  /*
+   * retrieveTeamMembersPerProject() method returns the number of team members of every project, in
+   * projectId order.
+   */
+
+  public List<GroupCount> retrieveTeamMembersPerProject() {
+    return coalesce(Arrays.asList("teamMembersPerProject"),
+        projectDao::countTeamMembersPerProject);
+  }
+
+  // --------------------------------------Search--------------------------------------------------//
+
+  /*
+   * searchAll() method returns one page of the sites, projects and team members whose names (and,
+   * for sites, addresses) match the query, best match first. The search runs against the in-memory
+   * SearchIndex and does not touch the database.
+   */
+
+  public SearchResults searchAll(String query, String type, int offset, int limit) {
+    return searchIndex.search(query, type, offset, limit);
+  }
+
+  // --------------------------------------Cache---------------------------------------------------//
+
+  /*
+   * retrieveCacheStats() method returns the size, hit, miss and eviction counters of the site,
+   * project, team member and response caches.
+   */
+
+  public Map<String, CacheStats> retrieveCacheStats() {
+    return siteDtoCache.stats();
+  }
+
+  /*
+   * retrieveEncodedResponse() method returns the serialized response body cached under the key,
+   * or calls the encoder to build it and caches the result. Concurrent requests for a missing key
+   * share one encoder call. The cache is emptied by every change, so a body is never older than
+   * the last commit.
+   */
+
+  public EncodedBody retrieveEncodedResponse(List<Object> key, Supplier<EncodedBody> encoder) {
+    return siteDtoCache.getOrLoad(siteDtoCache.responses(), key, k -> encoder.get());
+  }
+
+  /*
+   * coalesce() method runs a read in a read-only transaction, or joins the identical read that is
+   * already running. The key names the read and holds every parameter it depends on. The
+   * transaction is opened inside the shared read, so callers that join it do not take a connection
+   * while they wait. A read that may go to a stale replica runs on its own (see SiteDtoCache).
+   */
+
+  private <T> T coalesce(List<Object> key, Supplier<T> read) {
+    return siteDtoCache.share(key, () -> inTransaction(true, read));
+  }
+
+  /*
+   * inTransaction() method runs the work in its own transaction. It is used by the cached retrieve
+   * methods, so a cache hit does not open a transaction at all, and by the batch methods, which
+   * commit one transaction per chunk.
+   */
+
+  private <T> T inTransaction(boolean readOnly, Supplier<T> work) {
+    TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+    transactionTemplate.setReadOnly(readOnly);
+    return transactionTemplate.execute(status -> work.get());
   }
 }
 
@@ -0,0 +1,15 @@
+package site.service;
+
+/*
+ * Thrown when an update is sent with an If-Match header that does not match the current version
+ * of the row. GlobalErrorHandler answers it with 412 Precondition Failed.
+ */
+
+public class VersionMismatchException extends IllegalStateException {
+
+  private static final long serialVersionUID = 1L;
+
+  public VersionMismatchException(String message) {
+    super(message);
+  }
+}
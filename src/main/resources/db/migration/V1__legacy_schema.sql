@@ -0,0 +1,44 @@
+-- The schema as ddl-auto: update created it before versioned migrations were introduced: Ids from
+-- auto_increment columns, no version columns, no change feed and no secondary indexes. A database
+-- that already has these tables is baselined at this version (spring.flyway.baseline-on-migrate in
+-- the prod profile), so this script only runs on an empty database.
+
+create table site (
+  site_id bigint not null auto_increment,
+  site_address varchar(255),
+  site_name varchar(255),
+  site_phone varchar(255),
+  site_state varchar(255),
+  site_zip varchar(255),
+  primary key (site_id)
+) engine=InnoDB;
+
+create table project (
+  project_id bigint not null auto_increment,
+  project_length varchar(255),
+  project_name varchar(255),
+  project_type varchar(255),
+  site_id bigint,
+  primary key (project_id)
+) engine=InnoDB;
+
+create table team_member (
+  team_member_id bigint not null auto_increment,
+  team_member_name varchar(255),
+  team_member_phone varchar(255),
+  team_member_role varchar(255),
+  primary key (team_member_id)
+) engine=InnoDB;
+
+create table project_team_member (
+  project_id bigint not null,
+  team_member_id bigint not null,
+  primary key (project_id, team_member_id)
+) engine=InnoDB;
+
+alter table project add constraint fk_project_site
+  foreign key (site_id) references site (site_id);
+alter table project_team_member add constraint fk_project_team_member_project
+  foreign key (project_id) references project (project_id);
+alter table project_team_member add constraint fk_project_team_member_team_member
+  foreign key (team_member_id) references team_member (team_member_id);
@@ -0,0 +1,38 @@
+-- Brings the legacy schema (V1) to what the entities map today.
+
+-- Optimistic locking and ETags. Existing rows start at version 0.
+alter table site add column version bigint default 0 not null;
+alter table project add column version bigint default 0 not null;
+alter table team_member add column version bigint default 0 not null;
+
+-- Change feed, written in the same transaction as every change. Change Ids come from
+-- auto_increment, taken on the writer's connection as the event is inserted.
+create table change_event (
+  change_id bigint not null auto_increment,
+  created_at datetime(6) not null,
+  entity_id bigint not null,
+  entity_type varchar(255) not null,
+  operation varchar(255) not null,
+  primary key (change_id)
+) engine=InnoDB;
+
+-- Id generators for site, project and team member. MySQL has no sequences, so Hibernate keeps each
+-- one in a single-row table and reserves allocationSize (50) Ids per read with the pooled
+-- optimizer: reading next_val = n hands out n - 49 up to n. Seeding next_val at the highest
+-- existing Id + 50 makes the first reserved block start right after the existing rows. The
+-- auto_increment of the legacy Id columns is left in place; Hibernate always sends the Id.
+create table site_seq (next_val bigint) engine=InnoDB;
+insert into site_seq select coalesce(max(site_id), 0) + 50 from site;
+
+create table project_seq (next_val bigint) engine=InnoDB;
+insert into project_seq select coalesce(max(project_id), 0) + 50 from project;
+
+create table team_member_seq (next_val bigint) engine=InnoDB;
+insert into team_member_seq select coalesce(max(team_member_id), 0) + 50 from team_member;
+
+-- Indexes for the filtered and sorted listings, and for looking up the projects of a team member
+-- in project_team_member, whose primary key only serves lookups by project.
+create index idx_site_state on site (site_state);
+create index idx_project_type_name on project (project_type, project_name);
+create index idx_team_member_role_name on team_member (team_member_role, team_member_name);
+create index idx_project_team_member_team_member on project_team_member (team_member_id);
@@ -0,0 +1,4 @@
+-- Sorting all projects or all team members by name. The (type, name) and (role, name) indexes of
+-- V2 only serve the name order within one type or role.
+create index idx_project_name on project (project_name);
+create index idx_team_member_name on team_member (team_member_name);
@@ -0,0 +1,47 @@
+-- Tables of the replica database of the replicas-local profile, run by H2 for every connection it
+-- opens (hence "if not exists"). Only the tables that reads use; nothing replicates into them.
+
+create table if not exists site (
+  site_id bigint not null,
+  site_address varchar(255),
+  site_name varchar(255),
+  site_phone varchar(255),
+  site_state varchar(255),
+  site_zip varchar(255),
+  version bigint default 0 not null,
+  primary key (site_id)
+);
+
+create table if not exists project (
+  project_id bigint not null,
+  project_length varchar(255),
+  project_name varchar(255),
+  project_type varchar(255),
+  site_id bigint,
+  version bigint default 0 not null,
+  primary key (project_id)
+);
+
+create table if not exists team_member (
+  team_member_id bigint not null,
+  team_member_name varchar(255),
+  team_member_phone varchar(255),
+  team_member_role varchar(255),
+  version bigint default 0 not null,
+  primary key (team_member_id)
+);
+
+create table if not exists project_team_member (
+  project_id bigint not null,
+  team_member_id bigint not null,
+  primary key (project_id, team_member_id)
+);
+
+create table if not exists change_event (
+  change_id bigint not null,
+  created_at datetime(6) not null,
+  entity_id bigint not null,
+  entity_type varchar(255) not null,
+  operation varchar(255) not null,
+  primary key (change_id)
+);
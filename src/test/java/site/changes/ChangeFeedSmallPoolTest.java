@@ -0,0 +1,86 @@
+package site.changes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import site.controller.model.ChangeEventData;
+import site.controller.model.SiteData;
+import site.dao.ChangeEventDao;
+import site.service.SiteService;
+
+/*
+ * Regression test for writers that record change events while the pool is exhausted. With the
+ * MySQL dialect Hibernate emulates sequences with tables and reads them on a second connection, so
+ * a change Id taken from a sequence while the writer holds its own connection deadlocks once every
+ * connection of the pool belongs to a writer. More writers than connections update sites at once
+ * here; every update must commit with its event, well within the connection timeout. The test has
+ * its own database, since it creates the schema with another dialect.
+ */
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:site-small-pool;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+        + "DB_CLOSE_DELAY=-1",
+    "spring.jpa.database-platform=org.hibernate.dialect.MySQLDialect",
+    "spring.datasource.hikari.maximum-pool-size=2",
+    "spring.datasource.hikari.connection-timeout=5000", "site.changes.settle-window=0s"})
+@ActiveProfiles("test")
+class ChangeFeedSmallPoolTest {
+
+  private static final int WRITERS = 8;
+  private static final int UPDATES_PER_WRITER = 10;
+
+  @Autowired
+  private SiteService siteService;
+
+  @Autowired
+  private ChangeFeed changeFeed;
+
+  @Autowired
+  private ChangeEventDao changeEventDao;
+
+  @Test
+  void concurrentWritersDoNotWaitForASecondConnection() throws Exception {
+    List<SiteData> sites = new ArrayList<>();
+
+    for (int w = 0; w < WRITERS; w++) {
+      SiteData siteData = new SiteData();
+      siteData.setSiteName("Writer " + w);
+      sites.add(siteService.saveSite(siteData));
+    }
+
+    long start = changeEventDao.findAll().stream().mapToLong(event -> event.getChangeId()).max()
+        .orElse(0);
+    ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+
+    try {
+      List<Future<?>> writers = new ArrayList<>();
+
+      for (SiteData site : sites) {
+        writers.add(executor.submit(() -> {
+          for (int u = 0; u < UPDATES_PER_WRITER; u++) {
+            site.setSiteName("Update " + u);
+            siteService.saveSite(site);
+          }
+        }));
+      }
+
+      for (Future<?> writer : writers) {
+        writer.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    List<ChangeEventData> events = changeFeed.read(start, ChangeFeed.MAX_LIMIT);
+    assertThat(events).hasSize(WRITERS * UPDATES_PER_WRITER);
+    assertThat(events).extracting(ChangeEventData::getChangeId).isSorted().doesNotHaveDuplicates();
+  }
+}
@@ -0,0 +1,168 @@
+package site.changes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.DeferredResult;
+import site.controller.model.ChangeEventData;
+import site.dao.ChangeEventDao;
+
+/*
+ * Tests of the change feed: events of a transaction are coalesced and written on commit only, and
+ * readers resume after a change Id, with poll() and with the SSE stream's Last-Event-ID. The
+ * settle window is 0 so written events are visible straight away. Every test records events for
+ * its own entity Ids and reads after the newest change Id from before it started.
+ */
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = {"site.changes.settle-window=0s", "site.changes.poll-interval=50ms"})
+@ActiveProfiles("test")
+class ChangeFeedTest {
+
+  private static final AtomicLong ENTITY_IDS = new AtomicLong(1_000_000);
+
+  @Autowired
+  private ChangeFeed changeFeed;
+
+  @Autowired
+  private ChangeEventDao changeEventDao;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @LocalServerPort
+  private int port;
+
+  private TransactionTemplate transactionTemplate;
+  private long start;
+
+  @BeforeEach
+  void setUp() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    start = changeEventDao.findAll().stream().mapToLong(event -> event.getChangeId()).max()
+        .orElse(0);
+  }
+
+  @Test
+  void createdThenUpdatedInOneTransactionIsOneCreatedEvent() {
+    long entityId = ENTITY_IDS.incrementAndGet();
+
+    transactionTemplate.executeWithoutResult(status -> {
+      changeFeed.record(ChangeEventData.SITE, entityId, ChangeEventData.CREATED);
+      changeFeed.record(ChangeEventData.SITE, entityId, ChangeEventData.UPDATED);
+    });
+
+    List<ChangeEventData> events = changeFeed.read(start, ChangeFeed.MAX_LIMIT);
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0).getEntityId()).isEqualTo(entityId);
+    assertThat(events.get(0).getOperation()).isEqualTo(ChangeEventData.CREATED);
+  }
+
+  @Test
+  void rolledBackTransactionWritesNoEvent() {
+    long entityId = ENTITY_IDS.incrementAndGet();
+
+    transactionTemplate.executeWithoutResult(status -> {
+      changeFeed.record(ChangeEventData.PROJECT, entityId, ChangeEventData.CREATED);
+      status.setRollbackOnly();
+    });
+
+    assertThat(changeFeed.read(start, ChangeFeed.MAX_LIMIT)).isEmpty();
+  }
+
+  @Test
+  void pollResumesAfterTheGivenChangeId() throws Exception {
+    List<Long> changeIds = recordChanges(3);
+
+    DeferredResult<List<ChangeEventData>> result =
+        changeFeed.poll(changeIds.get(0), ChangeFeed.MAX_LIMIT, 0);
+    assertThat(changeIdsOf(result.getResult())).containsExactly(changeIds.get(1),
+        changeIds.get(2));
+
+    DeferredResult<List<ChangeEventData>> waiting =
+        changeFeed.poll(changeIds.get(2), ChangeFeed.MAX_LIMIT, 10);
+    assertThat(waiting.hasResult()).isFalse();
+
+    Long next = recordChanges(1).get(0);
+
+    for (int i = 0; i < 100 && !waiting.hasResult(); i++) {
+      Thread.sleep(50);
+    }
+    assertThat(changeIdsOf(waiting.getResult())).containsExactly(next);
+  }
+
+  @Test
+  void streamResumesAfterLastEventId() throws Exception {
+    List<Long> changeIds = recordChanges(3);
+
+    HttpRequest request = HttpRequest
+        .newBuilder(URI.create("http://localhost:" + port + "/site/changes/stream"))
+        .header("Last-Event-ID", String.valueOf(changeIds.get(0))).timeout(Duration.ofSeconds(10))
+        .GET().build();
+    HttpResponse<InputStream> response = HttpClient.newHttpClient().send(request,
+        HttpResponse.BodyHandlers.ofInputStream());
+
+    List<Long> received = new ArrayList<>();
+
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+      String line;
+
+      while (received.size() < 2 && (line = reader.readLine()) != null) {
+        if (line.startsWith("id:")) {
+          received.add(Long.valueOf(line.substring(3).trim()));
+        }
+      }
+    }
+    assertThat(received).containsExactly(changeIds.get(1), changeIds.get(2));
+  }
+
+  /*
+   * Records one event per transaction and returns their change Ids in order.
+   */
+
+  private List<Long> recordChanges(int count) {
+    List<Long> entityIds = new ArrayList<>();
+
+    for (int i = 0; i < count; i++) {
+      long entityId = ENTITY_IDS.incrementAndGet();
+      entityIds.add(entityId);
+      transactionTemplate.executeWithoutResult(status -> changeFeed
+          .record(ChangeEventData.TEAM_MEMBER, entityId, ChangeEventData.UPDATED));
+    }
+
+    List<Long> changeIds = new ArrayList<>();
+
+    for (ChangeEventData event : changeFeed.read(start, ChangeFeed.MAX_LIMIT)) {
+      if (entityIds.contains(event.getEntityId())) {
+        changeIds.add(event.getChangeId());
+      }
+    }
+    assertThat(changeIds).hasSize(count);
+    return changeIds;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Long> changeIdsOf(Object result) {
+    return ((List<ChangeEventData>) result).stream().map(ChangeEventData::getChangeId).toList();
+  }
+}
@@ -0,0 +1,118 @@
+package site.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Objects;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ActiveProfiles;
+import site.controller.model.SiteData;
+import site.search.SearchIndex;
+import site.service.SiteService;
+
+/*
+ * Tests of how PUT /site/{siteId} handles concurrent writes: an If-Match with an old ETag is
+ * answered with 412, a write that loses to another one is retried, and a write that loses every
+ * one of SiteService.MAX_WRITE_ATTEMPTS attempts is answered with 409 and leaves the row as it
+ * was. The lost writes are simulated by throwing OptimisticLockingFailureException from the
+ * search index, which is called inside the write transaction after the row has been flushed.
+ */
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = "spring.datasource.url=jdbc:h2:mem:site-writes;MODE=MySQL;"
+        + "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+@ActiveProfiles("test")
+class SiteWriteConflictTest {
+
+  @SpyBean
+  private SearchIndex searchIndex;
+
+  @Autowired
+  private SiteService siteService;
+
+  @LocalServerPort
+  private int port;
+
+  private Long siteId;
+
+  @BeforeEach
+  void createSite() {
+    SiteData siteData = new SiteData();
+    siteData.setSiteName("Original");
+    siteId = siteService.saveSite(siteData).getSiteId();
+    clearInvocations(searchIndex);
+  }
+
+  @Test
+  void staleIfMatchIsAnsweredWith412() throws Exception {
+    HttpResponse<String> first = put("First", "\"0\"");
+    assertThat(first.statusCode()).isEqualTo(200);
+    assertThat(first.headers().firstValue(HttpHeaders.ETAG)).hasValue("\"1\"");
+
+    HttpResponse<String> stale = put("Second", "\"0\"");
+    assertThat(stale.statusCode()).isEqualTo(412);
+    assertThat(siteName()).isEqualTo("First");
+  }
+
+  @Test
+  void lostWriteIsRetried() throws Exception {
+    doThrow(new OptimisticLockingFailureException("Lost to another write"))
+        .doThrow(new OptimisticLockingFailureException("Lost to another write"))
+        .doCallRealMethod().when(searchIndex).indexSite(eq(siteId), any(), any());
+
+    HttpResponse<String> response = put("Retried", "\"0\"");
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.headers().firstValue(HttpHeaders.ETAG)).hasValue("\"1\"");
+    assertThat(siteName()).isEqualTo("Retried");
+    verify(searchIndex, times(3)).indexSite(eq(siteId), any(), any());
+  }
+
+  @Test
+  void writeThatLosesEveryAttemptIsAnsweredWith409() throws Exception {
+    doThrow(new OptimisticLockingFailureException("Lost to another write")).when(searchIndex)
+        .indexSite(eq(siteId), any(), any());
+
+    HttpResponse<String> response = put("Never saved", null);
+
+    assertThat(response.statusCode()).isEqualTo(409);
+    verify(searchIndex, times(SiteService.MAX_WRITE_ATTEMPTS)).indexSite(eq(siteId), any(),
+        any());
+
+    doCallRealMethod().when(searchIndex).indexSite(eq(siteId), any(), any());
+    assertThat(siteName()).isEqualTo("Original");
+  }
+
+  private HttpResponse<String> put(String siteName, String ifMatch) throws Exception {
+    HttpRequest.Builder request =
+        HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/site/" + siteId))
+            .header(HttpHeaders.CONTENT_TYPE, "application/json")
+            .PUT(HttpRequest.BodyPublishers.ofString("{\"siteName\":\"" + siteName + "\"}"));
+
+    if (Objects.nonNull(ifMatch)) {
+      request.header(HttpHeaders.IF_MATCH, ifMatch);
+    }
+    return HttpClient.newHttpClient().send(request.build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private String siteName() {
+    return siteService.retrieveSiteById(siteId, 0).getSiteName();
+  }
+}
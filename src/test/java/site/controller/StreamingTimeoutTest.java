@@ -0,0 +1,98 @@
+package site.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import site.controller.model.SiteData;
+import site.service.SiteService;
+
+/*
+ * Regression test for streamed responses that take longer than the container's async timeout.
+ * The timeout of Tomcat is lowered to 500ms here and every page read is slowed down to 1.5s; the
+ * export and the stream must still be written in full, since spring.mvc.async.request-timeout
+ * turns the timeout off.
+ */
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = "spring.datasource.url=jdbc:h2:mem:site-streaming;MODE=MySQL;"
+        + "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+@ActiveProfiles("test")
+class StreamingTimeoutTest {
+
+  private static final int SITES = 3;
+  private static final long PAGE_READ_MILLIS = 1500;
+
+  @SpyBean
+  private SiteService siteService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @LocalServerPort
+  private int port;
+
+  @TestConfiguration
+  static class ShortContainerAsyncTimeout {
+    @Bean
+    WebServerFactoryCustomizer<TomcatServletWebServerFactory> shortAsyncTimeout() {
+      return factory -> factory.addConnectorCustomizers(connector -> connector.setAsyncTimeout(500));
+    }
+  }
+
+  @BeforeEach
+  void setUp() {
+    if (siteService.retrieveSitePage(null, SITES, 0).size() < SITES) {
+      for (int s = 0; s < SITES; s++) {
+        SiteData siteData = new SiteData();
+        siteData.setSiteName("Site " + s);
+        siteService.saveSite(siteData);
+      }
+    }
+
+    doAnswer(invocation -> {
+      Thread.sleep(PAGE_READ_MILLIS);
+      return invocation.callRealMethod();
+    }).when(siteService).retrieveSitePage(any(), anyInt(), anyInt());
+  }
+
+  @Test
+  void exportOutlivesTheContainerAsyncTimeout() throws Exception {
+    HttpResponse<String> response = get("/site/export");
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.body().lines()).hasSize(SITES);
+  }
+
+  @Test
+  void streamOutlivesTheContainerAsyncTimeout() throws Exception {
+    HttpResponse<String> response = get("/site/stream");
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(objectMapper.readValue(response.body(), List.class)).hasSize(SITES);
+  }
+
+  private HttpResponse<String> get(String path) throws Exception {
+    HttpRequest request =
+        HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).GET().build();
+    return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+  }
+}
@@ -0,0 +1,157 @@
+package site.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.http.Cookie;
+
+/*
+ * Tests of where ReadWriteRoutingDataSource sends a transaction, with a primary and a replica that
+ * are separate in-memory H2 databases: read-only transactions go to the replica, writes go to the
+ * primary, reads of the client that just wrote go to the primary, and reads fall back to the
+ * primary once the replica fails its health check. Each transaction runs "select database()" to
+ * see where it was routed.
+ */
+
+class ReadWriteRoutingDataSourceTest {
+
+  private static final String PRIMARY_URL =
+      "jdbc:h2:mem:routing-primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+  private static final String REPLICA_URL =
+      "jdbc:h2:mem:routing-replica;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+  private HikariDataSource primary;
+  private HikariDataSource replica;
+  private ReadWriteRoutingDataSource routingDataSource;
+  private JdbcTemplate jdbcTemplate;
+  private TransactionTemplate writeTemplate;
+  private TransactionTemplate readTemplate;
+
+  @BeforeEach
+  void setUp() {
+    primary = pool(ReadWriteRoutingDataSource.PRIMARY, PRIMARY_URL);
+    replica = pool("replica-1", REPLICA_URL);
+
+    RoutingProperties properties = new RoutingProperties();
+    properties.setLagQuery("");
+    properties.setHealthCheckInterval(Duration.ofMillis(50));
+    properties.setReadYourWritesWindow(Duration.ofSeconds(2));
+
+    routingDataSource =
+        new ReadWriteRoutingDataSource(primary, new ArrayList<>(List.of(replica)), properties);
+    routingDataSource.afterPropertiesSet();
+
+    LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+    writeTemplate = new TransactionTemplate(transactionManager);
+    readTemplate = new TransactionTemplate(transactionManager);
+    readTemplate.setReadOnly(true);
+
+    awaitUntil(routingDataSource::anyReplicaHealthy);
+  }
+
+  @AfterEach
+  void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+    routingDataSource.destroy();
+    primary.close();
+  }
+
+  @Test
+  void readOnlyTransactionsGoToTheReplicaAndWritesToThePrimary() {
+    assertThat(read()).isEqualTo("routing-replica");
+    assertThat(write()).isEqualTo("routing-primary");
+  }
+
+  @Test
+  void clientThatJustWroteReadsFromThePrimary() {
+    MockHttpServletResponse writeResponse = inRequest(new MockHttpServletRequest());
+    write();
+
+    Cookie lastWrite = writeResponse.getCookie(ReadWriteRoutingDataSource.LAST_WRITE_COOKIE);
+    assertThat(lastWrite).isNotNull();
+    assertThat(read()).as("same request").isEqualTo("routing-primary");
+
+    MockHttpServletRequest sameClient = new MockHttpServletRequest();
+    sameClient.setCookies(new Cookie(lastWrite.getName(), lastWrite.getValue()));
+    inRequest(sameClient);
+    assertThat(read()).as("next request with the cookie").isEqualTo("routing-primary");
+
+    inRequest(new MockHttpServletRequest());
+    assertThat(read()).as("another client").isEqualTo("routing-replica");
+
+    MockHttpServletRequest afterWindow = new MockHttpServletRequest();
+    afterWindow.setCookies(new Cookie(lastWrite.getName(),
+        Long.toString(Long.parseLong(lastWrite.getValue()) - 3000)));
+    inRequest(afterWindow);
+    assertThat(read()).as("cookie older than the window").isEqualTo("routing-replica");
+  }
+
+  @Test
+  void readsFallBackToThePrimaryWhenTheReplicaFails() {
+    assertThat(read()).isEqualTo("routing-replica");
+
+    replica.close();
+    awaitUntil(() -> !routingDataSource.anyReplicaHealthy());
+
+    assertThat(read()).isEqualTo("routing-primary");
+  }
+
+  private String read() {
+    return readTemplate.execute(status -> database());
+  }
+
+  private String write() {
+    return writeTemplate.execute(status -> database());
+  }
+
+  private String database() {
+    return jdbcTemplate.queryForObject("select database()", String.class);
+  }
+
+  private static MockHttpServletResponse inRequest(MockHttpServletRequest request) {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+    return response;
+  }
+
+  private static HikariDataSource pool(String name, String url) {
+    HikariDataSource pool = new HikariDataSource();
+    pool.setPoolName(name);
+    pool.setJdbcUrl(url);
+    pool.setUsername("sa");
+    pool.setMaximumPoolSize(2);
+    pool.setConnectionTimeout(250);
+    return pool;
+  }
+
+  private static void awaitUntil(BooleanSupplier condition) {
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime()).as("waited 10s for the health check").isLessThan(deadline);
+
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
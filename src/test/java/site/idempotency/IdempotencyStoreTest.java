@@ -0,0 +1,54 @@
+package site.idempotency;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/*
+ * Tests of how IdempotencyStore tells a retry from a reused key: bodies with the same hash code
+ * but different content are different requests, and the same content in another property order is
+ * the same request.
+ */
+
+class IdempotencyStoreTest {
+
+  private final IdempotencyStore store =
+      new IdempotencyStore(new SimpleMeterRegistry(), new ObjectMapper(), 100, Duration.ofHours(1));
+
+  private final AtomicInteger calls = new AtomicInteger();
+
+  @Test
+  void bodyWithTheSameHashCodeIsADifferentRequest() {
+    Map<String, String> first = Map.of("siteName", "Aa");
+    Map<String, String> second = Map.of("siteName", "BB");
+    assertThat(first.hashCode()).isEqualTo(second.hashCode());
+
+    store.execute("key", "createSite", first, calls::incrementAndGet);
+
+    assertThatThrownBy(() -> store.execute("key", "createSite", second, calls::incrementAndGet))
+        .isInstanceOf(IdempotencyKeyReusedException.class);
+    assertThat(calls).hasValue(1);
+  }
+
+  @Test
+  void sameBodyInAnotherOrderIsReplayed() {
+    Map<String, String> first = new LinkedHashMap<>();
+    first.put("siteName", "Site");
+    first.put("siteState", "OPEN");
+    Map<String, String> second = new LinkedHashMap<>();
+    second.put("siteState", "OPEN");
+    second.put("siteName", "Site");
+
+    Integer result = store.execute("key", "createSite", first, calls::incrementAndGet);
+
+    assertThat(store.execute("key", "createSite", second, calls::incrementAndGet))
+        .isEqualTo(result);
+    assertThat(calls).hasValue(1);
+  }
+}
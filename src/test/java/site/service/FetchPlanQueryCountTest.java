@@ -0,0 +1,111 @@
+package site.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.List;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+import jakarta.persistence.EntityManagerFactory;
+import site.controller.model.ProjectData;
+import site.controller.model.SiteData;
+import site.controller.model.TeamMemberData;
+
+/*
+ * Regression test for the fetch plans of the site graph: reading sites, projects and team members
+ * must take a fixed number of SQL statements however many rows there are. The statements are
+ * counted with Hibernate statistics (enabled in the test profile) around each service call.
+ * 
+ * Batch fetching is turned off here. With it, a lost fetch plan would still load all the lazy
+ * collections of a level in one statement and the counts would not change.
+ */
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.default_batch_fetch_size=1")
+@ActiveProfiles("test")
+class FetchPlanQueryCountTest {
+
+  private static final int SITES = 3;
+  private static final int PROJECTS_PER_SITE = 3;
+  private static final int TEAM_MEMBERS_PER_PROJECT = 2;
+
+  @Autowired
+  private SiteService siteService;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  private Statistics statistics;
+  private Long firstSiteId;
+  private String projectType;
+
+  @BeforeEach
+  void createSites() {
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    projectType = "type-" + System.nanoTime();
+
+    for (int s = 0; s < SITES; s++) {
+      SiteData siteData = new SiteData();
+      siteData.setSiteName("Site " + s);
+      Long siteId = siteService.saveSite(siteData).getSiteId();
+
+      if (s == 0) {
+        firstSiteId = siteId;
+      }
+
+      for (int p = 0; p < PROJECTS_PER_SITE; p++) {
+        ProjectData projectData = new ProjectData();
+        projectData.setProjectName("Project " + s + "." + p);
+        projectData.setProjectType(projectType);
+        Long projectId = siteService.saveProject(siteId, projectData).getProjectId();
+
+        for (int t = 0; t < TEAM_MEMBERS_PER_PROJECT; t++) {
+          TeamMemberData teamMemberData = new TeamMemberData();
+          teamMemberData.setTeamMemberName("Member " + s + "." + p + "." + t);
+          siteService.saveTeamMember(projectId, teamMemberData);
+        }
+      }
+    }
+  }
+
+  @Test
+  void sitePageTakesThreeStatements() {
+    statistics.clear();
+    List<SiteData> page = siteService.retrieveSitePage(firstSiteId - 1, SITES, SiteData.FULL_DEPTH);
+
+    assertThat(page).hasSize(SITES);
+    assertThat(page).allSatisfy(site -> {
+      assertThat(site.getProjects()).hasSize(PROJECTS_PER_SITE);
+      assertThat(site.getProjects())
+          .allSatisfy(project -> assertThat(project.getTeamMembers())
+              .hasSize(TEAM_MEMBERS_PER_PROJECT));
+    });
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+  }
+
+  @Test
+  void siteByIdAtFullDepthTakesOneStatement() {
+    statistics.clear();
+    SiteData site = siteService.retrieveSiteById(firstSiteId, SiteData.FULL_DEPTH);
+
+    assertThat(site.getProjects()).hasSize(PROJECTS_PER_SITE);
+    assertThat(site.getProjects()).allSatisfy(
+        project -> assertThat(project.getTeamMembers()).hasSize(TEAM_MEMBERS_PER_PROJECT));
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+  }
+
+  @Test
+  void projectListingTakesTwoStatements() {
+    statistics.clear();
+    List<ProjectData> projects = siteService.retrieveAllProjects(projectType, null,
+        Sort.unsorted(), ProjectData.FULL_DEPTH);
+
+    assertThat(projects).hasSize(SITES * PROJECTS_PER_SITE);
+    assertThat(projects).allSatisfy(
+        project -> assertThat(project.getTeamMembers()).hasSize(TEAM_MEMBERS_PER_PROJECT));
+    assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,98 @@
+package site.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import jakarta.servlet.http.Cookie;
+import site.controller.model.SiteData;
+import site.datasource.ReadWriteRoutingDataSource;
+
+/*
+ * Regression test for the shared caches with read replicas. The replica is a separate in-memory
+ * database that nothing replicates into, so it lags forever: a site is copied into it by hand as
+ * it was before an update. Another client reading the site right after the update gets the old
+ * row from the replica; that read must not be cached, or the client that made the update would be
+ * served the old row from the cache despite its site-last-write cookie.
+ */
+
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:site-cache-primary;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+        + "DB_CLOSE_DELAY=-1",
+    "site.datasource.routing.enabled=true", "site.datasource.routing.lag-query=",
+    "site.datasource.routing.health-check-interval=50ms",
+    "site.datasource.routing.replicas[0].url=jdbc:h2:mem:site-cache-replica;MODE=MySQL;"
+        + "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;"
+        + "INIT=RUNSCRIPT FROM 'classpath:db/replicas-local.sql'",
+    "site.datasource.routing.replicas[0].username=sa"})
+@ActiveProfiles("test")
+class ReplicaCacheTest {
+
+  @Autowired
+  private SiteService siteService;
+
+  @Autowired
+  private ReadWriteRoutingDataSource routingDataSource;
+
+  @AfterEach
+  void tearDown() {
+    RequestContextHolder.resetRequestAttributes();
+  }
+
+  @Test
+  void writerDoesNotReadAnotherClientsReplicaReadFromTheCache() throws Exception {
+    awaitHealthyReplica();
+
+    SiteData site = new SiteData();
+    site.setSiteName("Before");
+    site = siteService.saveSite(site);
+
+    JdbcTemplate replica =
+        new JdbcTemplate(routingDataSource.getResolvedDataSources().get("replica-1"));
+    replica.update("insert into site (site_id, site_name, version) values (?, ?, ?)",
+        site.getSiteId(), site.getSiteName(), site.getVersion());
+
+    MockHttpServletResponse writeResponse = inRequest(new MockHttpServletRequest());
+    site.setSiteName("After");
+    siteService.saveSite(site);
+    Cookie lastWrite = writeResponse.getCookie("site-last-write");
+    assertThat(lastWrite).isNotNull();
+
+    inRequest(new MockHttpServletRequest());
+    assertThat(siteService.retrieveSiteById(site.getSiteId(), SiteData.FULL_DEPTH).getSiteName())
+        .as("another client reads the lagging replica").isEqualTo("Before");
+    assertThat(siteService.retrieveSitePage(site.getSiteId() - 1, 1, 0).get(0).getSiteName())
+        .isEqualTo("Before");
+
+    MockHttpServletRequest writer = new MockHttpServletRequest();
+    writer.setCookies(lastWrite);
+    inRequest(writer);
+    assertThat(siteService.retrieveSiteById(site.getSiteId(), SiteData.FULL_DEPTH).getSiteName())
+        .as("the writer with its cookie").isEqualTo("After");
+    assertThat(siteService.retrieveSitePage(site.getSiteId() - 1, 1, 0).get(0).getSiteName())
+        .isEqualTo("After");
+  }
+
+  private static MockHttpServletResponse inRequest(MockHttpServletRequest request) {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+    return response;
+  }
+
+  private void awaitHealthyReplica() throws InterruptedException {
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+
+    while (!routingDataSource.anyReplicaHealthy()) {
+      assertThat(System.nanoTime()).as("waited 10s for the replica").isLessThan(deadline);
+      Thread.sleep(20);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package site.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import site.controller.model.BatchItemResult;
+import site.controller.model.SiteData;
+
+/*
+ * Tests of the results of saveSites(): every item is reported in request order, and an item that
+ * is rejected still carries the Id it was sent with.
+ */
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:site-import;MODE=MySQL;"
+    + "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+@ActiveProfiles("test")
+class SiteBatchTest {
+
+  @Autowired
+  private SiteService siteService;
+
+  @Test
+  void invalidUpdateIsReportedWithItsId() {
+    SiteData existing = new SiteData();
+    existing.setSiteName("Existing");
+    existing = siteService.saveSite(existing);
+
+    SiteData blankName = new SiteData();
+    blankName.setSiteId(existing.getSiteId());
+    SiteData missing = new SiteData();
+    missing.setSiteId(Long.MAX_VALUE);
+    missing.setSiteName("Missing");
+    SiteData created = new SiteData();
+    created.setSiteName("Created");
+
+    List<BatchItemResult> results = siteService.saveSites(List.of(blankName, missing, created));
+
+    assertThat(results).extracting(BatchItemResult::getStatus).containsExactly(
+        BatchItemResult.INVALID, BatchItemResult.INVALID, BatchItemResult.CREATED);
+    assertThat(results.get(0).getId()).isEqualTo(existing.getSiteId());
+    assertThat(results.get(0).getMessage()).isEqualTo("siteName is required");
+    assertThat(results.get(1).getId()).isEqualTo(Long.MAX_VALUE);
+    assertThat(results.get(2).getId()).isNotNull();
+  }
+}
@@ -0,0 +1,93 @@
+package site.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import site.controller.model.SiteData;
+import site.datasource.ReadWriteRoutingDataSource;
+
+/*
+ * Tests of the invalidation race of SiteDtoCache: a load that read a site before a write commits
+ * must not leave the old site in the cache once the write has committed, whether the load finishes
+ * after the write's invalidation or before the commit.
+ */
+
+class SiteDtoCacheTest {
+
+  private static final Long SITE_ID = 1L;
+
+  private final SiteDtoCache cache = new SiteDtoCache(new SimpleMeterRegistry(),
+      new StaticListableBeanFactory().getBeanProvider(ReadWriteRoutingDataSource.class), 100,
+      Duration.ofMinutes(1), 100, Duration.ofMinutes(1));
+
+  @AfterEach
+  void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void loadThatFinishesAfterTheWriteIsNotCached() throws Exception {
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch written = new CountDownLatch(1);
+
+    CompletableFuture<SiteData> load = CompletableFuture.supplyAsync(() -> cache.getOrLoad(
+        cache.sites(), SITE_ID, id -> {
+          SiteData before = site("Before");
+          loading.countDown();
+          await(written);
+          return before;
+        }));
+
+    assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+    cache.invalidateSite(SITE_ID);
+    written.countDown();
+
+    assertThat(load.get(5, TimeUnit.SECONDS).getSiteName()).isEqualTo("Before");
+    assertThat(cache.sites().get(SITE_ID)).isNull();
+    assertThat(cache.getOrLoad(cache.sites(), SITE_ID, id -> site("After")).getSiteName())
+        .isEqualTo("After");
+  }
+
+  @Test
+  void loadThatFinishesBeforeTheCommitIsDroppedByTheCommit() {
+    TransactionSynchronizationManager.initSynchronization();
+    cache.invalidateSite(SITE_ID);
+
+    // A reader outside the write transaction still sees the row from before the write.
+    cache.getOrLoad(cache.sites(), SITE_ID, id -> site("Before"));
+    assertThat(cache.sites().get(SITE_ID)).isNotNull();
+
+    for (TransactionSynchronization synchronization : TransactionSynchronizationManager
+        .getSynchronizations()) {
+      synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+    }
+
+    assertThat(cache.sites().get(SITE_ID)).isNull();
+  }
+
+  private static SiteData site(String siteName) {
+    SiteData siteData = new SiteData();
+    siteData.setSiteId(SITE_ID);
+    siteData.setSiteName(siteName);
+    return siteData;
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package site.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import site.controller.model.SiteData;
+
+/*
+ * Tests of importSites() with NDJSON lines read the way POST /site/import reads them: lines that
+ * leave out their projects or team members, or set them to null, are imported without them.
+ */
+
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:site-import;MODE=MySQL;"
+    + "DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")
+@ActiveProfiles("test")
+class SiteImportTest {
+
+  @Autowired
+  private SiteService siteService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Test
+  void linesWithoutProjectsOrTeamMembersAreImported() throws Exception {
+    String ndjson = """
+        {"siteName":"No projects"}
+        {"siteName":"Null projects","projects":null}
+        {"siteName":"Project without team members","projects":[{"projectName":"P1"}]}
+        {"siteName":"Null team members","projects":[{"projectName":"P2","teamMembers":null}]}
+        {"siteName":"Full","projects":[{"projectName":"P3","teamMembers":[{"teamMemberName":"T"}]}]}
+        """;
+
+    try (MappingIterator<SiteData> sites =
+        objectMapper.readerFor(SiteData.class).readValues(ndjson)) {
+      assertThat(siteService.importSites(sites))
+          .isEqualTo(Map.of("sites", 5L, "projects", 3L, "teamMembers", 1L));
+    }
+  }
+}